@@ -0,0 +1,241 @@
+package sol;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import src.AttributeSelection;
+import src.IDataset;
+
+/**
+ * The part of a training dataset that does not depend on where its rows are kept: the attribute list, the
+ * selection type and the choice of attribute to split on. Dataset keeps its rows in a list of Row objects and
+ * EncodedDataset keeps them in a ColumnStore, and each implements reading, counting and partitioning the rows
+ * its own way. TreeGenerator builds trees from either.
+ */
+public abstract class AbstractDataset implements IDataset {
+    private final AttributeSelection selectionType;
+    private final List<String> attributeList;
+
+    /**
+     * Constructor for an AbstractDataset
+     * @param attributeList - a list of attributes, which is copied
+     * @param attributeSelection - an enum for which way to select attributes
+     */
+    protected AbstractDataset(List<String> attributeList, AttributeSelection attributeSelection) {
+        this.attributeList = new ArrayList<String>(attributeList);
+        this.selectionType = attributeSelection;
+    }
+
+    /**
+     * This method, depending on the enum of the dataset, returns an attribute from the list. INFORMATION_GAIN
+     * measures each attribute against the target, which this dataset does not know, so it throws an
+     * IllegalStateException here and is only supported by getAttributeToSplitOn(String)
+     * @return the attribute to split on, from the attribute list which shrinks with each partition
+     */
+    public String getAttributeToSplitOn() {
+        switch (this.selectionType) {
+            case ASCENDING_ALPHABETICAL -> {
+                return this.attributeList.stream().sorted().toList().get(0);
+            }
+            case DESCENDING_ALPHABETICAL -> {
+                return this.attributeList.stream().sorted().toList().get(this.attributeList.size() - 1);
+            }
+            case RANDOM -> {
+                Random random = new Random();
+                int upperBound = this.attributeList.size();
+                int randomNum = random.nextInt(upperBound);
+                return this.attributeList.stream().sorted().toList().get(randomNum);
+            }
+            case INFORMATION_GAIN -> throw new IllegalStateException(
+                    "Information gain selection needs the target attribute");
+        }
+        throw new RuntimeException("Non-Exhaustive Switch Case");
+    }
+
+    /**
+     * Returns an attribute to split on for predicting the target attribute. For INFORMATION_GAIN this is the
+     * attribute whose values leave the least entropy in the target, with ties going to the attribute that comes
+     * first alphabetically. The other selection types ignore the target
+     * @param targetAttribute the attribute the tree is predicting
+     * @return the attribute to split on
+     */
+    public String getAttributeToSplitOn(String targetAttribute) {
+        if (this.selectionType != AttributeSelection.INFORMATION_GAIN) {
+            return this.getAttributeToSplitOn();
+        }
+        String best = null;
+        double bestEntropy = Double.POSITIVE_INFINITY;
+        for (String attribute : this.attributeList.stream().sorted().toList()) {
+            double entropy = splitEntropy(this.countByValue(attribute, targetAttribute).values());
+            if (entropy < bestEntropy) {
+                best = attribute;
+                bestEntropy = entropy;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Calculates the entropy left in the target after a split, weighted by the number of rows in each group.
+     * Splits with a lower result have a higher information gain
+     * @param groups the counts of the target values in each group of the split, as ints or as longs
+     * @return the total entropy of the groups, in nats times rows
+     */
+    static double splitEntropy(Collection<? extends Map<String, ? extends Number>> groups) {
+        double entropy = 0;
+        for (Map<String, ? extends Number> classCounts : groups) {
+            long total = 0;
+            for (Number count : classCounts.values()) {
+                total += count.longValue();
+            }
+            for (Number count : classCounts.values()) {
+                entropy -= count.longValue() * Math.log((double) count.longValue() / total);
+            }
+        }
+        return entropy;
+    }
+
+    /**
+     * Finds the value with the highest count, breaking ties alphabetically the same way as mostFrequent
+     * @param counts the number of rows for each value, as ints or as longs
+     * @return the most common value, or null if there are no counts
+     */
+    static String majority(Map<String, ? extends Number> counts) {
+        String best = null;
+        long bestCount = 0;
+        for (Map.Entry<String, ? extends Number> entry : counts.entrySet()) {
+            long count = entry.getValue().longValue();
+            if (count > bestCount || (count == bestCount && count > 0 && entry.getKey().compareTo(best) < 0)) {
+                best = entry.getKey();
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Method to get attribute list
+     * @return attribute list
+     */
+    @Override
+    public List<String> getAttributeList() {
+        return this.attributeList;
+    }
+
+    /**
+     * Method to get the selection type
+     * @return the selection type enum
+     */
+    @Override
+    public AttributeSelection getSelectionType() {
+        return this.selectionType;
+    }
+
+    /**
+     * Checks if the list of attributes is empty
+     * @return a boolean if the size of the list is zero
+     */
+    public boolean attributeListEmpty() {
+        if (this.attributeList.size() == 0) {
+            return true;
+        } else
+            return false;
+    }
+
+    /**
+     * Calculates the most frequent string from a given list. If the list is empty, it throws an exception. First
+     * it sorts the list, and then it starts comparing the values by comparing to each past value. It will go through
+     * the entire list and if there is a most common value, it returns that value. If the values are the same, it returns
+     * one at random.
+     * @param strings a list of strings for which to find the most commmon element
+     * @return the most common string in the list inputted
+     */
+    public String mostFrequent(List<String> strings) {
+        if (strings.isEmpty()) {
+            throw new IndexOutOfBoundsException("List is Empty");
+        }
+        List<String> sortedStrings = strings.stream().sorted().toList();
+        String currentString = sortedStrings.get(0);
+        int currentFrequency = 1;
+        String mostFrequentString = currentString;
+        int highestFrequency = currentFrequency;
+
+        for (int i = 1; i < sortedStrings.size(); i++) {
+            String s = sortedStrings.get(i);
+            if (s.equals(currentString)) {
+                currentFrequency++;
+            } else {
+                if (currentFrequency > highestFrequency) {
+                    highestFrequency = currentFrequency;
+                    mostFrequentString = currentString;
+                }
+                currentString = s;
+                currentFrequency = 1;
+            }
+        }
+        if (currentFrequency > highestFrequency) {
+            mostFrequentString = currentString;
+        }
+        return mostFrequentString;
+    }
+
+    /**
+     * Counts the rows for every pair of a value of an attribute and a value of the target attribute. The sums
+     * of these counts are what information gain is computed from
+     * @param attribute the attribute to group the rows by
+     * @param targetAttribute the attribute to count the values of within each group
+     * @return a map from each value of the attribute to the counts of the target values in its rows
+     */
+    protected abstract Map<String, Map<String, Integer>> countByValue(String attribute, String targetAttribute);
+
+    /**
+     * Draws a uniform random sample of the rows. If the dataset is no bigger than the sample size, the dataset
+     * itself is returned
+     * @param sampleSize the number of rows to draw
+     * @param random the source of randomness
+     * @return a dataset with the same attributes holding the sampled rows
+     */
+    public abstract AbstractDataset sample(int sampleSize, Random random);
+
+    /**
+     * From the dataset, given the attibute to get the values of, the method returns the values of the
+     * attribute contained in the dataset
+     * @param targetAttribute attribute which you want the values of
+     * @param distinct whether you want to list to have repeat values
+     * @return the list of values of the attribute (distinct or not)
+     */
+    public abstract ArrayList<String> getTargetValues(String targetAttribute, Boolean distinct);
+
+    /**
+     * Clones the current dataset with the parameter attribute removed from the attribute list
+     * @param attributeToRemove the attribute to remove from the attribute list
+     * @return the new dataset with the target attribute removed
+     */
+    public abstract AbstractDataset cloneWithRemoveFromAttribute(String attributeToRemove);
+
+    /**
+     * Method to split the dataset into different datasets based on the distinct values of the attribute
+     * to split on
+     * @param attributeToSplitOn the attribute by which we want to split the datasets on
+     * @return a list of datasets divided into different ones based on the distinct values of the attributes
+     */
+    public abstract List<? extends AbstractDataset> partition(String attributeToSplitOn);
+
+    /**
+     * Calculates which of the targetAttributes appears the most to get the default value. If the dataset is
+     * empty, it throws an IndexOutofBoundsException to indicate the dataset is empty
+     * @param targetAttribute the attribute which we are trying to find the most common of
+     * @return attribute which is the most common
+     */
+    public abstract String getDefault(String targetAttribute);
+
+    /**
+     * Checks whether all the outcomes in the dataset for the given attribute are the same
+     * @param targetAttribute the attribute for which to check if all are the same
+     * @return whether every row has the same value
+     */
+    public abstract boolean sameOutcome(String targetAttribute);
+}
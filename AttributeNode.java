@@ -1,8 +1,13 @@
 package sol;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import src.ITreeNode;
 import src.Row;
+import src.Schema;
+import src.SymbolTable;
 
 /**
  * A class representing an inner node in the decision tree.
@@ -13,6 +18,12 @@ public class AttributeNode implements ITreeNode {
     private String value;
     private String deflt;
     private List<ValueEdge> outgoingEdges;
+    private Map<String, Integer> edgeIndices;
+    private int majorityIndex;
+    private MissingValuePolicy missingPolicy;
+    private MissingValuePolicy unseenPolicy;
+    private volatile Ordinal ordinal;
+    private volatile SymbolRoutes symbolRoutes;
 
     /**
      * This is the constructor for the attribute node. It takes it a value of the attribute. It also
@@ -23,9 +34,34 @@ public class AttributeNode implements ITreeNode {
      * @param outgoingEdges list of value edges with a value and a child node
      */
     public AttributeNode(String value, String defaults, List<ValueEdge> outgoingEdges) {
+        this(value, defaults, outgoingEdges, null, MissingValuePolicy.FAIL, MissingValuePolicy.DEFAULT);
+    }
+
+    /**
+     * This constructor also takes what to do with rows that are missing the attribute or have a value none of
+     * the edges match. The edges are indexed by value so a row is routed with a single lookup
+     * @param value attribute value
+     * @param defaults default value for when no value edge values match
+     * @param outgoingEdges list of value edges with a value and a child node
+     * @param majorityChild the child that the most training rows went to, used by MAJORITY_BRANCH
+     * @param missingPolicy what to do when a row has no value for the attribute
+     * @param unseenPolicy what to do when a row's value matches none of the edges
+     */
+    public AttributeNode(String value, String defaults, List<ValueEdge> outgoingEdges, ITreeNode majorityChild,
+                         MissingValuePolicy missingPolicy, MissingValuePolicy unseenPolicy) {
         this.value = value;
         this.deflt = defaults;
         this.outgoingEdges = outgoingEdges;
+        this.edgeIndices = new HashMap<>();
+        this.majorityIndex = -1;
+        for (int i = 0; i < outgoingEdges.size(); i++) {
+            this.edgeIndices.putIfAbsent(outgoingEdges.get(i).getValue(), i);
+            if (majorityChild != null && outgoingEdges.get(i).getChild() == majorityChild) {
+                this.majorityIndex = i;
+            }
+        }
+        this.missingPolicy = missingPolicy;
+        this.unseenPolicy = unseenPolicy;
     }
 
     /**
@@ -36,11 +72,240 @@ public class AttributeNode implements ITreeNode {
      */
     @Override
     public String getDecision(Row forDatum) {
-        for(ValueEdge edge:this.outgoingEdges) {
-            if(forDatum.getAttributeValue(this.value).equals(edge.getValue())) {
-                return edge.getChild().getDecision(forDatum);
+        ITreeNode child = this.route(forDatum);
+        if (child != null) {
+            return child.getDecision(forDatum);
+        }
+        return this.deflt;
+    }
+
+    /**
+     * Finds the child whose edge value matches the row's value for this node's attribute. Returns null when
+     * the caller should fall back on the default value. Rows that are missing the attribute, or whose value
+     * none of the edges were trained on, are handled by this node's policies without scanning the edges or
+     * throwing on the way
+     * @param forDatum the datum to route
+     * @return the child to continue at, or null to use the default value
+     */
+    ITreeNode route(Row forDatum) {
+        int edgeIndex = this.routeIndex(forDatum);
+        if (edgeIndex < 0) {
+            return null;
+        }
+        return this.outgoingEdges.get(edgeIndex).getChild();
+    }
+
+    /**
+     * Finds the position in the outgoing edges of the edge a row should follow. This is the node's switch on
+     * the row's value, which path statistics call directly to number the edges they take. Rows that know the
+     * symbols of their values are switched on the symbol through a table, and the string is only looked up for
+     * rows without symbols, missing values and symbols added to the table after the node first saw it
+     * @param forDatum the datum to route
+     * @return the index of the edge to follow, or -1 to use the default value
+     */
+    int routeIndex(Row forDatum) {
+        SymbolTable symbols = forDatum.getSymbolTable();
+        if (symbols != null) {
+            int symbol = forDatum.findAttributeSymbol(this.ordinalIn(forDatum.getSchema()));
+            SymbolRoutes routes = this.symbolRoutes(symbols);
+            if (symbol >= 0 && symbol < routes.edges.length) {
+                int edgeIndex = routes.edges[symbol];
+                if (edgeIndex >= 0) {
+                    return edgeIndex;
+                }
+                return this.fallback(this.unseenPolicy, "Value '" + symbols.stringOf(symbol) + "' of attribute '"
+                        + this.value + "' was not seen in training");
+            }
+        }
+        String datumValue = this.lookup(forDatum);
+        if (datumValue == null) {
+            return this.fallback(this.missingPolicy, "Attribute '" + this.value + "' did not exist in datum");
+        }
+        int edgeIndex = this.edgeIndex(datumValue);
+        if (edgeIndex >= 0) {
+            return edgeIndex;
+        }
+        return this.fallback(this.unseenPolicy, "Value '" + datumValue + "' of attribute '" + this.value
+                + "' was not seen in training");
+    }
+
+    /**
+     * Finds the position in the outgoing edges of the edge for a value
+     * @param datumValue the value of this node's attribute
+     * @return the index of the edge, or -1 if no edge has the value
+     */
+    int edgeIndex(String datumValue) {
+        Integer edgeIndex = this.edgeIndices.get(datumValue);
+        return edgeIndex == null ? -1 : edgeIndex;
+    }
+
+    /**
+     * Reads the row's value for this node's attribute. The attribute's ordinal is resolved once per fixed
+     * schema, so rows parsed from one file are read by ordinal without looking the name up
+     * @param forDatum the datum to read
+     * @return the value, or null if the row has none
+     */
+    private String lookup(Row forDatum) {
+        Schema schema = forDatum.getSchema();
+        if (!schema.isFixed()) {
+            return forDatum.findAttributeValue(this.value);
+        }
+        return forDatum.findAttributeValue(this.ordinalIn(schema));
+    }
+
+    /**
+     * Finds the ordinal of this node's attribute in a schema, resolving it once per fixed schema
+     * @param schema the schema of the row being routed
+     * @return the ordinal, or -1 if the schema does not have the attribute
+     */
+    private int ordinalIn(Schema schema) {
+        if (!schema.isFixed()) {
+            return schema.ordinalOf(this.value);
+        }
+        Ordinal resolved = this.ordinal;
+        if (resolved == null || resolved.schema != schema) {
+            resolved = new Ordinal(schema, schema.ordinalOf(this.value));
+            this.ordinal = resolved;
+        }
+        return resolved.ordinal;
+    }
+
+    /**
+     * Gets the table from the symbols of a symbol table to this node's edges, building it the first time a row
+     * from that table is routed. Symbols the table gets later are past the end and go through the string lookup
+     * @param symbols the symbol table of the row being routed
+     * @return the table of the row's symbol table
+     */
+    private SymbolRoutes symbolRoutes(SymbolTable symbols) {
+        SymbolRoutes routes = this.symbolRoutes;
+        if (routes == null || routes.symbols != symbols) {
+            int[] edges = new int[symbols.size()];
+            Arrays.fill(edges, -1);
+            for (int i = this.outgoingEdges.size() - 1; i >= 0; i--) {
+                int symbol = symbols.find(this.outgoingEdges.get(i).getValue());
+                if (symbol >= 0 && symbol < edges.length) {
+                    edges[symbol] = i;
+                }
             }
+            routes = new SymbolRoutes(symbols, edges);
+            this.symbolRoutes = routes;
         }
+        return routes;
+    }
+
+    /**
+     * Applies a policy for a row that did not match any edge
+     * @param policy the policy to apply
+     * @param message the message of the exception thrown by FAIL
+     * @return the index of the edge to follow, or -1 to use the default value
+     */
+    private int fallback(MissingValuePolicy policy, String message) {
+        switch (policy) {
+            case DEFAULT -> {
+                return -1;
+            }
+            case MAJORITY_BRANCH -> {
+                return this.majorityIndex;
+            }
+            case FAIL -> throw new RuntimeException(message);
+        }
+        throw new RuntimeException("Non-Exhaustive Switch Case");
+    }
+
+    /**
+     * Gets the attribute this node splits on
+     * @return the attribute name
+     */
+    String getAttribute() {
+        return this.value;
+    }
+
+    /**
+     * Gets the default value returned when none of the edges match
+     * @return the default value
+     */
+    String getDefault() {
         return this.deflt;
     }
+
+    /**
+     * Gets the child that the most training rows went to
+     * @return the majority child, or null if it is not known
+     */
+    ITreeNode getMajorityChild() {
+        if (this.majorityIndex < 0) {
+            return null;
+        }
+        return this.outgoingEdges.get(this.majorityIndex).getChild();
+    }
+
+    /**
+     * Gets the position in the outgoing edges of the edge that the most training rows went to
+     * @return the index of the majority edge, or -1 if it is not known
+     */
+    int getMajorityIndex() {
+        return this.majorityIndex;
+    }
+
+    /**
+     * Gets what this node does with rows that are missing its attribute
+     * @return the missing value policy
+     */
+    MissingValuePolicy getMissingPolicy() {
+        return this.missingPolicy;
+    }
+
+    /**
+     * Gets what this node does with values none of its edges match
+     * @return the unseen value policy
+     */
+    MissingValuePolicy getUnseenPolicy() {
+        return this.unseenPolicy;
+    }
+
+    /**
+     * Gets the outgoing edges of this node
+     * @return the list of value edges
+     */
+    List<ValueEdge> getOutgoingEdges() {
+        return this.outgoingEdges;
+    }
+
+    /**
+     * The ordinal of this node's attribute in one schema, kept together so threads never see one without the
+     * other
+     */
+    private static class Ordinal {
+        private final Schema schema;
+        private final int ordinal;
+
+        /**
+         * Constructor for an Ordinal
+         * @param schema the schema the ordinal was resolved against
+         * @param ordinal the ordinal of the attribute, or -1 if the schema does not have it
+         */
+        Ordinal(Schema schema, int ordinal) {
+            this.schema = schema;
+            this.ordinal = ordinal;
+        }
+    }
+
+    /**
+     * The index of the edge of each symbol of one symbol table, kept together so threads never see one without
+     * the other
+     */
+    private static class SymbolRoutes {
+        private final SymbolTable symbols;
+        private final int[] edges;
+
+        /**
+         * Constructor for a SymbolRoutes
+         * @param symbols the symbol table the edges were looked up in
+         * @param edges the index of the edge of each symbol, or -1 for values none of the edges have
+         */
+        SymbolRoutes(SymbolTable symbols, int[] edges) {
+            this.symbols = symbols;
+            this.edges = edges;
+        }
+    }
 }
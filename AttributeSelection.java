@@ -2,7 +2,9 @@ package src;
 
 /**
  * Enums representing which way attributes should be selected from a dataset.
+ * INFORMATION_GAIN picks the attribute that best separates the values of the
+ * target attribute, so it needs to know the target.
  */
 public enum AttributeSelection {
-    ASCENDING_ALPHABETICAL, DESCENDING_ALPHABETICAL, RANDOM;
+    ASCENDING_ALPHABETICAL, DESCENDING_ALPHABETICAL, RANDOM, INFORMATION_GAIN;
 }
@@ -0,0 +1,270 @@
+package sol;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+
+import src.DecisionTreeCSVParser;
+import src.ITreeGenerator;
+import src.Row;
+import src.Schema;
+
+/**
+ * A class that scores a CSV file with a trained tree as a three stage pipeline. A reader streams the records of
+ * the input into batches, a pool of workers makes the decisions for whole batches, and a writer appends a
+ * prediction column and writes the batches out in their original order. The stages are joined by bounded
+ * queues and the number of batches in flight is capped, so memory use stays the same no matter how large the
+ * file is, while the scoring itself spreads over every worker.
+ */
+public class BatchScorer {
+    private static final Batch END = new Batch(-1, new ArrayList<>());
+
+    private final ITreeGenerator<?> generator;
+    private final int batchSize;
+    private final int numWorkers;
+    private final int queueCapacity;
+
+    /**
+     * Constructor for a BatchScorer
+     * @param generator the trained tree generator, whose getDecision must be safe to call from many threads
+     * @param batchSize the number of records in each batch
+     * @param numWorkers the number of scoring threads
+     * @param queueCapacity the number of batches each queue between stages can hold
+     */
+    public BatchScorer(ITreeGenerator<?> generator, int batchSize, int numWorkers, int queueCapacity) {
+        if (batchSize < 1 || numWorkers < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Batch size, workers and queue capacity must be positive");
+        }
+        this.generator = generator;
+        this.batchSize = batchSize;
+        this.numWorkers = numWorkers;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Scores every record of a CSV file and writes the records with their predictions to another file
+     * @param inputPath the path to the CSV file to score
+     * @param outputPath the path to write the scored CSV file to
+     * @param predictionColumn the name of the column to add
+     * @return the number of records scored
+     */
+    public long score(String inputPath, String outputPath, String predictionColumn) {
+        // caps the batches between the reader and the writer, including those in the writer's reorder buffer
+        Semaphore inFlight = new Semaphore(2 * this.queueCapacity + this.numWorkers);
+        BlockingQueue<Batch> toScore = new ArrayBlockingQueue<>(this.queueCapacity);
+        BlockingQueue<Batch> toWrite = new ArrayBlockingQueue<>(this.queueCapacity);
+        AtomicInteger runningWorkers = new AtomicInteger(this.numWorkers);
+        ExecutorService stages = Executors.newFixedThreadPool(this.numWorkers + 1);
+        Failure failure = new Failure(Thread.currentThread(), stages);
+        CountDownLatch written = new CountDownLatch(1);
+        long numRecords = 0;
+        try (CSVParser parser = DecisionTreeCSVParser.open(inputPath);
+             CSVPrinter printer = new CSVPrinter(new BufferedWriter(new FileWriter(outputPath)), CSVFormat.RFC4180)) {
+            List<String> header = parser.getHeaderNames();
+            List<String> outputHeader = new ArrayList<>(header);
+            outputHeader.add(predictionColumn);
+            printer.printRecord(outputHeader);
+            Schema schema = new Schema(header);
+
+            for (int i = 0; i < this.numWorkers; i++) {
+                failure.submit(() -> this.scoreBatches(schema, toScore, toWrite, runningWorkers));
+            }
+            failure.submit(() -> {
+                writeBatches(printer, toWrite, inFlight);
+                written.countDown();
+            });
+
+            long sequence = 0;
+            List<CSVRecord> records = new ArrayList<>(this.batchSize);
+            for (CSVRecord record : parser) {
+                records.add(record);
+                numRecords++;
+                if (records.size() == this.batchSize) {
+                    inFlight.acquire();
+                    toScore.put(new Batch(sequence++, records));
+                    records = new ArrayList<>(this.batchSize);
+                }
+            }
+            if (!records.isEmpty()) {
+                inFlight.acquire();
+                toScore.put(new Batch(sequence, records));
+            }
+            for (int i = 0; i < this.numWorkers; i++) {
+                toScore.put(END);
+            }
+            written.await();
+        } catch (InterruptedException e) {
+            failure.rethrow();
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while scoring: " + inputPath, e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("IOException when scoring: " + inputPath, e);
+        } finally {
+            stages.shutdownNow();
+        }
+        failure.rethrow();
+        return numRecords;
+    }
+
+    /**
+     * The worker stage. Takes batches until it sees the end marker, and the last worker to finish passes the
+     * end marker on to the writer
+     * @param schema the columns of the input, shared by the rows of every batch
+     * @param toScore the queue of batches to score
+     * @param toWrite the queue of scored batches
+     * @param runningWorkers the number of workers that have not finished yet
+     * @throws InterruptedException if the pipeline is shut down
+     */
+    private void scoreBatches(Schema schema, BlockingQueue<Batch> toScore, BlockingQueue<Batch> toWrite,
+                              AtomicInteger runningWorkers) throws InterruptedException {
+        while (true) {
+            Batch batch = toScore.take();
+            if (batch == END) {
+                if (runningWorkers.decrementAndGet() == 0) {
+                    toWrite.put(END);
+                }
+                return;
+            }
+            for (int i = 0; i < batch.records.size(); i++) {
+                CSVRecord record = batch.records.get(i);
+                String[] values = new String[schema.size()];
+                for (int column = 0; column < values.length && column < record.size(); column++) {
+                    values[column] = record.get(column);
+                }
+                batch.predictions[i] = this.generator.getDecision(new Row(schema, values));
+            }
+            toWrite.put(batch);
+        }
+    }
+
+    /**
+     * The writer stage. Holds batches that arrive early until every batch before them has been written
+     * @param printer the printer of the output file
+     * @param toWrite the queue of scored batches
+     * @param inFlight the permits of the batches in flight, released as batches are written
+     * @throws InterruptedException if the pipeline is shut down
+     * @throws IOException if writing fails
+     */
+    private static void writeBatches(CSVPrinter printer, BlockingQueue<Batch> toWrite, Semaphore inFlight)
+            throws InterruptedException, IOException {
+        Map<Long, Batch> waiting = new HashMap<>();
+        long next = 0;
+        while (true) {
+            Batch batch = toWrite.take();
+            if (batch == END) {
+                break;
+            }
+            waiting.put(batch.sequence, batch);
+            Batch ready;
+            while ((ready = waiting.remove(next)) != null) {
+                for (int i = 0; i < ready.records.size(); i++) {
+                    List<String> values = new ArrayList<>();
+                    ready.records.get(i).forEach(values::add);
+                    values.add(ready.predictions[i]);
+                    printer.printRecord(values);
+                }
+                next++;
+                inFlight.release();
+            }
+        }
+        printer.flush();
+    }
+
+    /**
+     * A batch of consecutive records and their predictions
+     */
+    private static class Batch {
+        private final long sequence;
+        private final List<CSVRecord> records;
+        private final String[] predictions;
+
+        /**
+         * Constructor for a Batch
+         * @param sequence the position of the batch in the file
+         * @param records the records of the batch
+         */
+        Batch(long sequence, List<CSVRecord> records) {
+            this.sequence = sequence;
+            this.records = records;
+            this.predictions = new String[records.size()];
+        }
+    }
+
+    /**
+     * A stage of the pipeline
+     */
+    private interface Stage {
+        /**
+         * Runs the stage to completion
+         * @throws Exception if the stage fails
+         */
+        void run() throws Exception;
+    }
+
+    /**
+     * Tracks the first failure of any stage. A failing stage stops every other stage and interrupts the reader,
+     * so no stage is left blocked on a queue that will never move again
+     */
+    private static class Failure {
+        private final Thread reader;
+        private final ExecutorService stages;
+        private volatile Throwable cause;
+
+        /**
+         * Constructor for a Failure
+         * @param reader the thread running the reader stage
+         * @param stages the executor running the other stages
+         */
+        Failure(Thread reader, ExecutorService stages) {
+            this.reader = reader;
+            this.stages = stages;
+        }
+
+        /**
+         * Runs a stage on the executor, recording it if it fails
+         * @param stage the stage to run
+         */
+        void submit(Stage stage) {
+            this.stages.submit(() -> {
+                try {
+                    stage.run();
+                } catch (InterruptedException e) {
+                    // another stage failed and the pipeline is shutting down
+                } catch (Throwable t) {
+                    if (this.cause == null) {
+                        this.cause = t;
+                    }
+                    this.stages.shutdownNow();
+                    this.reader.interrupt();
+                }
+            });
+        }
+
+        /**
+         * Throws the failure of a stage, if there was one
+         */
+        void rethrow() {
+            if (this.cause != null) {
+                Thread.interrupted();
+                throw new RuntimeException("Scoring failed", this.cause);
+            }
+        }
+    }
+}
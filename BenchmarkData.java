@@ -0,0 +1,76 @@
+package sol;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import src.Row;
+import src.Schema;
+import src.SymbolTable;
+
+/**
+ * A class that generates synthetic categorical data for the benchmarks. Every row has a number of attributes
+ * named a0, a1, ... with values v0, v1, ..., and a target attribute "label" that depends on the first few
+ * attributes with some noise, so trees trained on it have real structure to find.
+ */
+public class BenchmarkData {
+    /**
+     * The name of the target attribute of the generated rows
+     */
+    public static final String TARGET = "label";
+
+    // shared by every call so that rows generated again with the same seed hold the same instances
+    private static final SymbolTable SYMBOLS = new SymbolTable();
+
+    /**
+     * Generates rows of synthetic data. Names and values are interned so the rows look like parsed ones, and the
+     * rows share one fixed schema like the rows of a parsed file. Every row records the attributes read from it,
+     * so benchmarks that read rows many times generate them again with the same seed between rounds
+     * @param numRows the number of rows
+     * @param numAttributes the number of attributes besides the target
+     * @param numValues the number of distinct values of every attribute
+     * @param seed the seed for the random values
+     * @return the list of rows
+     */
+    public static List<Row> generate(int numRows, int numAttributes, int numValues, long seed) {
+        List<String> columns = new ArrayList<>();
+        for (String attribute : attributes(numAttributes)) {
+            columns.add(SYMBOLS.intern(attribute));
+        }
+        Schema schema = new Schema(columns);
+        Random random = new Random(seed);
+        List<Row> rows = new ArrayList<>(numRows);
+        for (int i = 0; i < numRows; i++) {
+            String[] values = new String[numAttributes + 1];
+            int score = 0;
+            for (int a = 0; a < numAttributes; a++) {
+                int value = random.nextInt(numValues);
+                if (a < 3) {
+                    score += value;
+                }
+                values[a] = SYMBOLS.intern("v" + value);
+            }
+            boolean positive = score > (numValues - 1) * 3 / 2;
+            if (random.nextInt(10) == 0) {
+                positive = !positive;
+            }
+            values[numAttributes] = SYMBOLS.intern(positive ? "yes" : "no");
+            rows.add(new Row(schema, values));
+        }
+        return rows;
+    }
+
+    /**
+     * Gets the attribute names of generated rows, including the target
+     * @param numAttributes the number of attributes besides the target
+     * @return the list of attribute names
+     */
+    public static List<String> attributes(int numAttributes) {
+        List<String> attributes = new ArrayList<>();
+        for (int a = 0; a < numAttributes; a++) {
+            attributes.add("a" + a);
+        }
+        attributes.add(TARGET);
+        return attributes;
+    }
+}
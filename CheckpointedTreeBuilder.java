@@ -0,0 +1,646 @@
+package sol;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+import src.AttributeSelection;
+import src.ITreeNode;
+import src.Row;
+import src.SymbolTable;
+
+/**
+ * A class that builds trees in a way that survives a crash or restart. Instead of recursing, the build keeps a
+ * work queue of pending nodes, each just the indices of its rows and the attributes left to split on, and
+ * expands them one at a time with the same split selection as generateTreeHelper. Whenever the checkpoint
+ * interval has passed, the partially built tree and the queue are written to a checkpoint file, and resume
+ * carries on from the last one. Once the queue is empty the tree is assembled with the generator's policies
+ * and subtree sharing, installed in the generator, and the checkpoint is deleted.
+ *
+ * The checkpoint is a header naming the data it was written for, with a SHA-256 fingerprint of the store's
+ * dictionaries and codes, followed by the generator's split sampling settings and the state of its sampling
+ * Random, every node of the partial tree and then the queue. Saving the Random means a resumed build draws the
+ * same samples as one that never stopped, so it grows the same tree. The rows of a pending node are written as
+ * variable-length gaps between consecutive row indices, which are small because partitions keep their rows in
+ * order, so most rows take a single byte.
+ */
+public class CheckpointedTreeBuilder {
+    private static final int MAGIC = 0x44544350;
+    private static final int VERSION = 3;
+    private static final byte LEAF = 0;
+    private static final byte SPLIT = 1;
+    private static final byte PENDING = 2;
+
+    private final Path checkpointFile;
+    private final Duration checkpointInterval;
+
+    /**
+     * Constructor for a CheckpointedTreeBuilder
+     * @param checkpointFile the file to keep the checkpoint in
+     * @param checkpointInterval the least time between checkpoints
+     */
+    public CheckpointedTreeBuilder(Path checkpointFile, Duration checkpointInterval) {
+        if (checkpointInterval.isNegative()) {
+            throw new IllegalArgumentException("Checkpoint interval must not be negative: " + checkpointInterval);
+        }
+        this.checkpointFile = checkpointFile.toAbsolutePath();
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Builds a tree from scratch and installs it in a generator, replacing any earlier checkpoint
+     * @param generator the generator to install the tree in
+     * @param trainingData the dataset to train on
+     * @param targetAttribute the attribute to predict
+     */
+    public void build(TreeGenerator generator, EncodedDataset trainingData, String targetAttribute) {
+        this.run(generator, this.start(trainingData, targetAttribute), Long.MAX_VALUE);
+    }
+
+    /**
+     * Carries on the build saved in the checkpoint and installs the tree in a generator
+     * @param generator the generator to install the tree in
+     * @param trainingData the dataset the checkpoint was written for
+     * @param targetAttribute the attribute to predict
+     */
+    public void resume(TreeGenerator generator, EncodedDataset trainingData, String targetAttribute) {
+        this.run(generator, this.read(generator, trainingData, targetAttribute), Long.MAX_VALUE);
+    }
+
+    /**
+     * Checks whether there is a build to resume
+     * @return whether the checkpoint file exists
+     */
+    public boolean hasCheckpoint() {
+        return Files.exists(this.checkpointFile);
+    }
+
+    /**
+     * Starts a build whose queue holds just the root
+     * @param trainingData the dataset to train on
+     * @param targetAttribute the attribute to predict
+     * @return the new build
+     */
+    Build start(EncodedDataset trainingData, String targetAttribute) {
+        EncodedDataset data = trainingData.cloneWithRemoveFromAttribute(targetAttribute);
+        Build build = new Build(data.getStore(), targetAttribute, data.getSelectionType());
+        build.nodes.add(new Pending(0, data.getRowIndices(), data.getAttributeList()));
+        build.queue.push(0);
+        return build;
+    }
+
+    /**
+     * Expands pending nodes until the queue is empty, writing checkpoints along the way, and then installs the
+     * tree and deletes the checkpoint. If it stops early, it writes a checkpoint first
+     * @param generator the generator to build with and install the tree in
+     * @param build the build to carry on
+     * @param maxExpansions the most nodes to expand before stopping
+     * @return whether the tree was finished and installed
+     */
+    boolean run(TreeGenerator generator, Build build, long maxExpansions) {
+        long lastCheckpoint = System.nanoTime();
+        for (long expanded = 0; !build.queue.isEmpty(); expanded++) {
+            if (expanded == maxExpansions) {
+                this.write(generator, build);
+                return false;
+            }
+            build.expand(generator, build.queue.pop());
+            if (System.nanoTime() - lastCheckpoint >= this.checkpointInterval.toNanos()) {
+                this.write(generator, build);
+                lastCheckpoint = System.nanoTime();
+            }
+        }
+        generator.startBuild();
+        generator.finishBuild(build.assemble(generator, 0));
+        try {
+            Files.deleteIfExists(this.checkpointFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException("IOException when deleting checkpoint: " + this.checkpointFile, e);
+        }
+        return true;
+    }
+
+    /**
+     * Writes a checkpoint of a build. It is written under a temporary name and then moved into place, so a
+     * crash while writing leaves the previous checkpoint intact
+     * @param generator the generator whose sampling state is saved
+     * @param build the build to save
+     */
+    private void write(TreeGenerator generator, Build build) {
+        Path directory = this.checkpointFile.getParent();
+        Path temporary = null;
+        try {
+            Files.createDirectories(directory);
+            temporary = Files.createTempFile(directory, "checkpoint", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeHeader(out, build.store, build.targetAttribute, build.selectionType, build.fingerprint);
+                writeSampling(out, generator);
+                out.writeInt(build.nodes.size());
+                for (Slot node : build.nodes) {
+                    writeNode(out, node);
+                }
+                out.writeInt(build.queue.size());
+                for (int id : build.queue) {
+                    out.writeInt(id);
+                }
+            }
+            Files.move(temporary, this.checkpointFile, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw new UncheckedIOException("IOException when writing checkpoint: " + this.checkpointFile, e);
+        }
+    }
+
+    /**
+     * Reads the build saved in the checkpoint and puts the generator's sampling Random back where it was
+     * @param generator the generator to resume with, which must have the sampling settings it was written with
+     * @param trainingData the dataset the checkpoint must have been written for
+     * @param targetAttribute the attribute the checkpoint must predict
+     * @return the saved build
+     */
+    Build read(TreeGenerator generator, EncodedDataset trainingData, String targetAttribute) {
+        if (!this.hasCheckpoint()) {
+            throw new IllegalStateException("No checkpoint to resume from: " + this.checkpointFile);
+        }
+        ColumnStore store = trainingData.getStore();
+        AttributeSelection selectionType = trainingData.getSelectionType();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(this.checkpointFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IllegalStateException("Not a checkpoint of this version: " + this.checkpointFile);
+            }
+            Build build = new Build(store, targetAttribute, selectionType);
+            if (!readHeader(in, store, targetAttribute, selectionType, build.fingerprint)) {
+                throw new IllegalStateException("Checkpoint " + this.checkpointFile
+                        + " was written for different data or a different target");
+            }
+            Random sampleRandom = this.readSampling(in, generator);
+            int numNodes = in.readInt();
+            for (int id = 0; id < numNodes; id++) {
+                build.nodes.add(readNode(in, id));
+            }
+            int queueSize = in.readInt();
+            for (int i = 0; i < queueSize; i++) {
+                build.queue.addLast(in.readInt());
+            }
+            if (sampleRandom != null) {
+                generator.restoreSampleRandom(sampleRandom);
+            }
+            return build;
+        } catch (IOException e) {
+            throw new UncheckedIOException("IOException when reading checkpoint: " + this.checkpointFile, e);
+        }
+    }
+
+    /**
+     * Writes what identifies the data a build is for: the target, the selection type, the store's shape and the
+     * fingerprint of its contents
+     * @param out the stream to write to
+     * @param store the store holding the rows
+     * @param targetAttribute the attribute to predict
+     * @param selectionType the way to select attributes
+     * @param fingerprint the fingerprint of the store
+     * @throws IOException if writing fails
+     */
+    private static void writeHeader(DataOutputStream out, ColumnStore store, String targetAttribute,
+                                    AttributeSelection selectionType, byte[] fingerprint) throws IOException {
+        out.writeUTF(targetAttribute);
+        out.writeUTF(selectionType.name());
+        out.writeInt(store.rowCount());
+        out.writeInt(store.getColumnNames().size());
+        for (int column = 0; column < store.getColumnNames().size(); column++) {
+            out.writeUTF(store.getColumnNames().get(column));
+            out.writeInt(store.dictionary(column).size());
+        }
+        out.writeInt(fingerprint.length);
+        out.write(fingerprint);
+    }
+
+    /**
+     * Reads a header written by writeHeader and checks it against the data being resumed
+     * @param in the stream to read from
+     * @param store the store holding the rows
+     * @param targetAttribute the attribute to predict
+     * @param selectionType the way to select attributes
+     * @param fingerprint the fingerprint of the store
+     * @return whether the header matches
+     * @throws IOException if reading fails
+     */
+    private static boolean readHeader(DataInputStream in, ColumnStore store, String targetAttribute,
+                                      AttributeSelection selectionType, byte[] fingerprint) throws IOException {
+        if (!in.readUTF().equals(targetAttribute) || !in.readUTF().equals(selectionType.name())
+                || in.readInt() != store.rowCount() || in.readInt() != store.getColumnNames().size()) {
+            return false;
+        }
+        for (int column = 0; column < store.getColumnNames().size(); column++) {
+            if (!in.readUTF().equals(store.getColumnNames().get(column))
+                    || in.readInt() != store.dictionary(column).size()) {
+                return false;
+            }
+        }
+        byte[] written = new byte[in.readInt()];
+        in.readFully(written);
+        return MessageDigest.isEqual(written, fingerprint);
+    }
+
+    /**
+     * Writes the generator's split sampling settings and, if sampling is on, the state of its sampling Random
+     * @param out the stream to write to
+     * @param generator the generator building the tree
+     * @throws IOException if writing fails
+     */
+    private static void writeSampling(DataOutputStream out, TreeGenerator generator) throws IOException {
+        out.writeInt(generator.getSamplingThreshold());
+        out.writeInt(generator.getSampleSize());
+        if (generator.getSamplingThreshold() > 0) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream object = new ObjectOutputStream(bytes)) {
+                object.writeObject(generator.getSampleRandom());
+            }
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+        }
+    }
+
+    /**
+     * Reads what writeSampling wrote and checks the settings against the generator's, since a build resumed
+     * with other sampling would not grow the tree it started
+     * @param in the stream to read from
+     * @param generator the generator to resume with
+     * @return the saved sampling Random, or null if sampling was off
+     * @throws IOException if reading fails
+     */
+    private Random readSampling(DataInputStream in, TreeGenerator generator) throws IOException {
+        int threshold = in.readInt();
+        int sampleSize = in.readInt();
+        if (threshold != generator.getSamplingThreshold()
+                || (threshold > 0 && sampleSize != generator.getSampleSize())) {
+            throw new IllegalStateException("Checkpoint " + this.checkpointFile
+                    + " was written with different split sampling");
+        }
+        if (threshold <= 0) {
+            return null;
+        }
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        try (ObjectInputStream object = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            object.setObjectInputFilter(ObjectInputFilter.Config.createFilter("java.util.Random;!*"));
+            return (Random) object.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IllegalStateException("Corrupt checkpoint sampling state", e);
+        }
+    }
+
+    /**
+     * Hashes the contents of a store, so that a checkpoint is only resumed on the data it was written for and not
+     * on other data of the same shape. Each column's dictionary goes into the hash, followed by its codes
+     * @param store the store holding the rows
+     * @return the SHA-256 hash of the store
+     */
+    static byte[] fingerprint(ColumnStore store) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new DigestOutputStream(OutputStream.nullOutputStream(), digest)))) {
+            for (int column = 0; column < store.getColumnNames().size(); column++) {
+                SymbolTable dictionary = store.dictionary(column);
+                out.writeInt(dictionary.size());
+                for (int code = 0; code < dictionary.size(); code++) {
+                    out.writeUTF(dictionary.stringOf(code));
+                }
+                for (int row = 0; row < store.rowCount(); row++) {
+                    out.writeInt(store.code(row, column));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("IOException when hashing store", e);
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Writes one node of a partial tree
+     * @param out the stream to write to
+     * @param node the node
+     * @throws IOException if writing fails
+     */
+    private static void writeNode(DataOutputStream out, Slot node) throws IOException {
+        if (node instanceof Leaf leaf) {
+            out.writeByte(LEAF);
+            out.writeUTF(leaf.decision);
+        } else if (node instanceof Split split) {
+            out.writeByte(SPLIT);
+            out.writeUTF(split.attribute);
+            out.writeUTF(split.defaultValue);
+            out.writeInt(split.values.size());
+            for (int i = 0; i < split.values.size(); i++) {
+                out.writeUTF(split.values.get(i));
+                out.writeInt(split.children[i]);
+            }
+            out.writeInt(split.majorityChild);
+        } else if (node instanceof Pending pending) {
+            out.writeByte(PENDING);
+            out.writeInt(pending.attributes.size());
+            for (String attribute : pending.attributes) {
+                out.writeUTF(attribute);
+            }
+            out.writeInt(pending.rows.length);
+            int previous = 0;
+            for (int row : pending.rows) {
+                writeVarInt(out, zigZag(row - previous));
+                previous = row;
+            }
+        } else {
+            throw new RuntimeException("Non-Exhaustive Switch Case");
+        }
+    }
+
+    /**
+     * Reads a node written by writeNode
+     * @param in the stream to read from
+     * @param id the index of the node in the partial tree
+     * @return the node
+     * @throws IOException if reading fails
+     */
+    private static Slot readNode(DataInputStream in, int id) throws IOException {
+        switch (in.readByte()) {
+            case LEAF -> {
+                return new Leaf(in.readUTF());
+            }
+            case SPLIT -> {
+                String attribute = in.readUTF();
+                String defaultValue = in.readUTF();
+                int numChildren = in.readInt();
+                List<String> values = new ArrayList<>();
+                int[] children = new int[numChildren];
+                for (int i = 0; i < numChildren; i++) {
+                    values.add(in.readUTF());
+                    children[i] = in.readInt();
+                }
+                return new Split(attribute, defaultValue, values, children, in.readInt());
+            }
+            case PENDING -> {
+                int numAttributes = in.readInt();
+                List<String> attributes = new ArrayList<>();
+                for (int i = 0; i < numAttributes; i++) {
+                    attributes.add(in.readUTF());
+                }
+                int[] rows = new int[in.readInt()];
+                int previous = 0;
+                for (int i = 0; i < rows.length; i++) {
+                    previous += unZigZag(readVarInt(in));
+                    rows[i] = previous;
+                }
+                return new Pending(id, rows, attributes);
+            }
+            default -> throw new IllegalStateException("Corrupt checkpoint node " + id);
+        }
+    }
+
+    /**
+     * Maps a signed gap to an unsigned one so small negative gaps stay small
+     * @param value the gap
+     * @return the encoded gap
+     */
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    /**
+     * Undoes zigZag
+     * @param value the encoded gap
+     * @return the gap
+     */
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Writes an int seven bits at a time, low bits first, with the top bit of each byte marking that more follow
+     * @param out the stream to write to
+     * @param value the value, read as unsigned
+     * @throws IOException if writing fails
+     */
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Reads an int written by writeVarInt
+     * @param in the stream to read from
+     * @return the value
+     * @throws IOException if reading fails
+     */
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Corrupt checkpoint row index");
+    }
+
+    /**
+     * The state of a build: every node of the partial tree, indexed by id with the root at 0, and the queue of
+     * pending nodes still to expand
+     */
+    static class Build {
+        private final ColumnStore store;
+        private final String targetAttribute;
+        private final AttributeSelection selectionType;
+        private final byte[] fingerprint;
+        private final List<Slot> nodes;
+        private final Deque<Integer> queue;
+
+        /**
+         * Constructor for a Build, which fingerprints the store once for all its checkpoints
+         * @param store the store holding the rows
+         * @param targetAttribute the attribute to predict
+         * @param selectionType the way to select attributes
+         */
+        Build(ColumnStore store, String targetAttribute, AttributeSelection selectionType) {
+            this.store = store;
+            this.targetAttribute = targetAttribute;
+            this.selectionType = selectionType;
+            this.fingerprint = fingerprint(store);
+            this.nodes = new ArrayList<>();
+            this.queue = new ArrayDeque<>();
+        }
+
+        /**
+         * Expands a pending node into a leaf or a split whose children are new pending nodes. The children go
+         * on the front of the queue, so the build goes depth first and the queue stays short
+         * @param generator the generator whose split selection is used
+         * @param id the pending node
+         */
+        void expand(TreeGenerator generator, int id) {
+            Pending pending = (Pending) this.nodes.get(id);
+            EncodedDataset subset = new EncodedDataset(this.store, pending.rows, pending.attributes,
+                    this.selectionType);
+            List<Pending> children = new ArrayList<>();
+            ITreeNode level = generator.buildLevel(subset, this.targetAttribute, p -> {
+                Pending child = new Pending(this.nodes.size() + children.size(),
+                        ((EncodedDataset) p).getRowIndices(), p.getAttributeList());
+                children.add(child);
+                return child;
+            }, false);
+            if (level instanceof AttributeNode node) {
+                List<String> values = new ArrayList<>();
+                for (ValueEdge edge : node.getOutgoingEdges()) {
+                    values.add(edge.getValue());
+                }
+                int[] childIds = children.stream().mapToInt(child -> child.id).toArray();
+                this.nodes.set(id, new Split(node.getAttribute(), node.getDefault(), values, childIds,
+                        ((Pending) node.getMajorityChild()).id));
+            } else {
+                this.nodes.set(id, new Leaf(((DecisionLeaf) level).getValue()));
+            }
+            this.nodes.addAll(children);
+            for (int i = children.size() - 1; i >= 0; i--) {
+                this.queue.push(children.get(i).id);
+            }
+        }
+
+        /**
+         * Assembles the finished subtree under a node with the generator's makeLeaf and makeNode
+         * @param generator the generator to make the nodes with
+         * @param id the node
+         * @return the subtree
+         */
+        ITreeNode assemble(TreeGenerator generator, int id) {
+            Slot node = this.nodes.get(id);
+            if (node instanceof Leaf leaf) {
+                return generator.makeLeaf(leaf.decision);
+            } else if (node instanceof Split split) {
+                List<ValueEdge> edgeList = new ArrayList<>();
+                ITreeNode majorityChild = null;
+                for (int i = 0; i < split.children.length; i++) {
+                    ITreeNode child = this.assemble(generator, split.children[i]);
+                    edgeList.add(new ValueEdge(split.values.get(i), child));
+                    if (split.children[i] == split.majorityChild) {
+                        majorityChild = child;
+                    }
+                }
+                return generator.makeNode(split.attribute, split.defaultValue, edgeList, majorityChild);
+            }
+            throw new IllegalStateException("Node " + id + " has not been expanded");
+        }
+    }
+
+    /**
+     * A node of a partial tree
+     */
+    private interface Slot {
+    }
+
+    /**
+     * A node that has been expanded into a leaf
+     */
+    private static class Leaf implements Slot {
+        private final String decision;
+
+        /**
+         * Constructor for a Leaf
+         * @param decision the decision of the leaf
+         */
+        Leaf(String decision) {
+            this.decision = decision;
+        }
+    }
+
+    /**
+     * A node that has been expanded into a split, whose children are referred to by id
+     */
+    private static class Split implements Slot {
+        private final String attribute;
+        private final String defaultValue;
+        private final List<String> values;
+        private final int[] children;
+        private final int majorityChild;
+
+        /**
+         * Constructor for a Split
+         * @param attribute the attribute to split on
+         * @param defaultValue the most common outcome of the node's rows
+         * @param values the value of each edge
+         * @param children the id of the child of each edge
+         * @param majorityChild the id of the child that the most rows went to
+         */
+        Split(String attribute, String defaultValue, List<String> values, int[] children, int majorityChild) {
+            this.attribute = attribute;
+            this.defaultValue = defaultValue;
+            this.values = values;
+            this.children = children;
+            this.majorityChild = majorityChild;
+        }
+    }
+
+    /**
+     * A node that has not been expanded yet. It stands in for its subtree while its parent is built, so it is a
+     * tree node, but it cannot make decisions
+     */
+    private static class Pending implements Slot, ITreeNode {
+        private final int id;
+        private final int[] rows;
+        private final List<String> attributes;
+
+        /**
+         * Constructor for a Pending node
+         * @param id the index of the node in the partial tree
+         * @param rows the indices of the node's rows in the store
+         * @param attributes the attributes left to split on
+         */
+        Pending(int id, int[] rows, List<String> attributes) {
+            this.id = id;
+            this.rows = rows;
+            this.attributes = List.copyOf(attributes);
+        }
+
+        @Override
+        public String getDecision(Row forDatum) {
+            throw new IllegalStateException("Node " + this.id + " has not been expanded");
+        }
+    }
+}
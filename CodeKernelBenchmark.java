@@ -0,0 +1,132 @@
+package sol;
+
+import java.util.List;
+
+import src.AttributeSelection;
+
+/**
+ * A benchmark of the code kernels. For the root of an information gain tree on synthetic encoded data it does
+ * the work of one node, finding the default, checking the outcome, counting the (value, class) pairs of every
+ * attribute and partitioning on one of them, once with the row-at-a-time loops EncodedDataset used before the
+ * kernels and once with the kernels, and prints the time of each. It then prints the time to build whole trees.
+ */
+public class CodeKernelBenchmark {
+    private static final int NUM_ROWS = 1000000;
+    private static final int NUM_ATTRIBUTES = 10;
+    private static final int NUM_VALUES = 4;
+    private static final int ROUNDS = 10;
+    private static final int REPEATS = 5;
+
+    /**
+     * Runs the benchmark and prints the results
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        List<String> attributes = BenchmarkData.attributes(NUM_ATTRIBUTES);
+        EncodedDataset data = EncodedDataset.encode(attributes,
+                BenchmarkData.generate(NUM_ROWS, NUM_ATTRIBUTES, NUM_VALUES, 1), AttributeSelection.INFORMATION_GAIN);
+        ColumnStore store = data.getStore();
+        int[] rows = data.getRowIndices();
+        int target = store.columnIndex(BenchmarkData.TARGET);
+        int[] columns = new int[NUM_ATTRIBUTES];
+        for (int a = 0; a < NUM_ATTRIBUTES; a++) {
+            columns[a] = store.columnIndex(attributes.get(a));
+        }
+
+        long checksum = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int r = 0; r < REPEATS; r++) {
+                checksum += scalarNode(store, rows, columns, target);
+            }
+            long scalar = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int r = 0; r < REPEATS; r++) {
+                checksum += kernelNode(store, rows, columns, target);
+            }
+            long kernel = System.nanoTime() - start;
+            start = System.nanoTime();
+            new TreeGenerator().generateTree(data, BenchmarkData.TARGET);
+            long tree = System.nanoTime() - start;
+            System.out.printf("Round %d: node %d ms scalar, %d ms kernel (%.2fx) | tree %d ms%n", round,
+                    scalar / REPEATS / 1000000, kernel / REPEATS / 1000000, (double) scalar / kernel,
+                    tree / 1000000);
+        }
+        System.out.println("Checksum: " + checksum);
+    }
+
+    /**
+     * Does the counting and partitioning of a node one row at a time through the store, reading the target
+     * column again for every count
+     * @param store the store holding the rows
+     * @param rows the rows of the node
+     * @param columns the columns of the attributes
+     * @param target the column of the target
+     * @return a checksum of the results
+     */
+    private static long scalarNode(ColumnStore store, int[] rows, int[] columns, int target) {
+        int numClasses = store.dictionary(target).size();
+        int[] classCounts = new int[numClasses];
+        for (int row : rows) {
+            classCounts[store.code(row, target)]++;
+        }
+        int first = store.code(rows[0], target);
+        for (int row : rows) {
+            if (store.code(row, target) != first) {
+                break;
+            }
+        }
+        long checksum = classCounts[0];
+        for (int column : columns) {
+            int[] table = new int[store.dictionary(column).size() * numClasses];
+            for (int row : rows) {
+                table[store.code(row, column) * numClasses + store.code(row, target)]++;
+            }
+            checksum += table[0];
+        }
+        int column = columns[0];
+        int[] counts = new int[store.dictionary(column).size()];
+        for (int row : rows) {
+            counts[store.code(row, column)]++;
+        }
+        int[][] parts = new int[counts.length][];
+        for (int code = 0; code < counts.length; code++) {
+            parts[code] = new int[counts[code]];
+        }
+        int[] filled = new int[counts.length];
+        for (int row : rows) {
+            int code = store.code(row, column);
+            parts[code][filled[code]++] = row;
+        }
+        return checksum + parts[0].length;
+    }
+
+    /**
+     * Does the counting and partitioning of a node with the kernels, gathering the target column once
+     * @param store the store holding the rows
+     * @param rows the rows of the node
+     * @param columns the columns of the attributes
+     * @param target the column of the target
+     * @return a checksum of the results
+     */
+    private static long kernelNode(ColumnStore store, int[] rows, int[] columns, int target) {
+        int numClasses = store.dictionary(target).size();
+        int[] classes = CodeKernels.gather(store, target, rows);
+        CodeKernels.firstMissing(classes);
+        int[] classCounts = CodeKernels.count(classes, numClasses);
+        for (int code : classes) {
+            if (code != classes[0]) {
+                break;
+            }
+        }
+        long checksum = classCounts[0];
+        for (int column : columns) {
+            checksum += CodeKernels.countPairs(store, column, rows, classes, store.dictionary(column).size(),
+                    numClasses)[0];
+        }
+        int[] codes = CodeKernels.gather(store, columns[0], rows);
+        CodeKernels.firstMissing(codes);
+        int[][] groups = CodeKernels.groupByCode(rows, codes, store.dictionary(columns[0]).size());
+        return checksum + groups[0].length;
+    }
+}
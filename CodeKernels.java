@@ -0,0 +1,166 @@
+package sol;
+
+/**
+ * Primitive kernels over the codes of an encoded dataset, for the loops tree building spends its time in:
+ * counting codes, counting (value, class) pairs and grouping row indices by code. The kernels work on int
+ * arrays and read each column of the store at most once per call, so a node can gather its class codes once and
+ * reuse them for its default, its outcome check and the pair counts of every attribute.
+ *
+ * Counting cannot be split into independent lanes, since neighbouring rows often have the same code and each
+ * increment has to wait for the one before it. Counting codes that have already been gathered therefore keeps
+ * several copies of a small table and sends consecutive rows to different copies, so the increments of nearby
+ * rows do not depend on each other, and adds the copies together at the end. This matters most on skewed data,
+ * where long runs of rows hit the same cell.
+ *
+ * There is no jdk.incubator.vector path. The incubator module is only visible to code compiled and run with
+ * --add-modules jdk.incubator.vector, which nothing that builds or runs this code passes, and the hot loops here
+ * are histograms and scatters, whose lanes can collide on one cell and which the Vector API offers no conflict
+ * detection for. The kernels are scalar loops that the JIT unrolls.
+ */
+class CodeKernels {
+    /** Tables bigger than this are counted into a single copy, since the copies would no longer fit in cache */
+    private static final int MAX_COPIED_TABLE = 1 << 12;
+
+    private CodeKernels() {
+    }
+
+    /**
+     * Reads the codes of a column for a list of rows
+     * @param store the store holding the rows
+     * @param column the index of the column
+     * @param rows the indices of the rows
+     * @return the code of each row, in the order of rows
+     */
+    static int[] gather(ColumnStore store, int column, int[] rows) {
+        int[] codes = new int[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            codes[i] = store.code(rows[i], column);
+        }
+        return codes;
+    }
+
+    /**
+     * Finds the first missing code
+     * @param codes the codes to check
+     * @return the position of the first negative code, or -1 if every code is present
+     */
+    static int firstMissing(int[] codes) {
+        // or-ing the codes together is a branch-free test for any sign bit
+        int any = 0;
+        for (int code : codes) {
+            any |= code;
+        }
+        if (any >= 0) {
+            return -1;
+        }
+        for (int i = 0; i < codes.length; i++) {
+            if (codes[i] < 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Counts the rows with each code
+     * @param codes the codes of the rows, none of which may be missing
+     * @param numCodes the number of distinct codes
+     * @return the number of rows for each code
+     */
+    static int[] count(int[] codes, int numCodes) {
+        int n = codes.length;
+        if (numCodes > MAX_COPIED_TABLE || n < 4 * numCodes) {
+            int[] counts = new int[numCodes];
+            for (int code : codes) {
+                counts[code]++;
+            }
+            return counts;
+        }
+        int[] c0 = new int[numCodes];
+        int[] c1 = new int[numCodes];
+        int[] c2 = new int[numCodes];
+        int[] c3 = new int[numCodes];
+        int i = 0;
+        for (; i + 4 <= n; i += 4) {
+            c0[codes[i]]++;
+            c1[codes[i + 1]]++;
+            c2[codes[i + 2]]++;
+            c3[codes[i + 3]]++;
+        }
+        for (; i < n; i++) {
+            c0[codes[i]]++;
+        }
+        return sum(c0, c1, c2, c3);
+    }
+
+    /**
+     * Counts the rows with each (value, class) pair into a flat table where the pair (v, c) is at
+     * v * numClasses + c. The values are read straight from the store, since each column is only read once per
+     * node, and the classes have already been gathered
+     * @param store the store holding the rows
+     * @param column the column of the values
+     * @param rows the indices of the rows
+     * @param classes the class code of each row, none of which may be missing
+     * @param numValues the number of distinct values
+     * @param numClasses the number of distinct classes
+     * @return the table of counts, or null if a row has no value for the column
+     */
+    static int[] countPairs(ColumnStore store, int column, int[] rows, int[] classes, int numValues,
+                            int numClasses) {
+        int[] table = new int[numValues * numClasses];
+        int any = 0;
+        for (int i = 0; i < rows.length; i++) {
+            int value = store.code(rows[i], column);
+            any |= value;
+            // a missing value is counted as code 0 and the whole table is thrown away below
+            table[Math.max(value, 0) * numClasses + classes[i]]++;
+        }
+        return any < 0 ? null : table;
+    }
+
+    /**
+     * Groups rows by code with a counting sort. The groups are in the order their codes first appear, and rows
+     * keep their order within each group
+     * @param rows the indices of the rows
+     * @param codes the code of each row, none of which may be missing
+     * @param numCodes the number of distinct codes
+     * @return the rows of each group
+     */
+    static int[][] groupByCode(int[] rows, int[] codes, int numCodes) {
+        int[] counts = count(codes, numCodes);
+        int distinct = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                distinct++;
+            }
+        }
+        int[][] byCode = new int[numCodes][];
+        int[][] groups = new int[distinct][];
+        int[] filled = new int[numCodes];
+        int group = 0;
+        for (int i = 0; i < rows.length; i++) {
+            int code = codes[i];
+            if (filled[code] == 0) {
+                byCode[code] = new int[counts[code]];
+                groups[group++] = byCode[code];
+            }
+            byCode[code][filled[code]++] = rows[i];
+        }
+        return groups;
+    }
+
+    /**
+     * Adds four copies of a table together into the first
+     * @param c0 the first copy, which gets the sum
+     * @param c1 the second copy
+     * @param c2 the third copy
+     * @param c3 the fourth copy
+     * @return the first copy
+     */
+    private static int[] sum(int[] c0, int[] c1, int[] c2, int[] c3) {
+        for (int c = 0; c < c0.length; c++) {
+            c0[c] += c1[c] + c2[c] + c3[c];
+        }
+        return c0;
+    }
+}
@@ -0,0 +1,65 @@
+package sol;
+
+import java.util.List;
+
+import src.Row;
+import src.SymbolTable;
+
+/**
+ * An interface for a table of rows stored column by column as dictionary-encoded int codes. Each column has its
+ * own dictionary, so the codes of a column run from 0 to the number of distinct values in it. A row that has no
+ * value for a column holds the code -1.
+ */
+public interface ColumnStore {
+
+    /**
+     * Gets the number of rows in the store
+     * @return the number of rows
+     */
+    public int rowCount();
+
+    /**
+     * Gets the names of the columns in the order they are stored
+     * @return the list of column names
+     */
+    public List<String> getColumnNames();
+
+    /**
+     * Finds the position of a column
+     * @param columnName the name of the column
+     * @return the index of the column, or -1 if the store has no such column
+     */
+    public int columnIndex(String columnName);
+
+    /**
+     * Gets the code of a single cell
+     * @param row the index of the row
+     * @param column the index of the column
+     * @return the code of the value, or -1 if the row has no value for the column
+     */
+    public int code(int row, int column);
+
+    /**
+     * Gets the dictionary that maps the codes of a column to their values
+     * @param column the index of the column
+     * @return the dictionary of the column
+     */
+    public SymbolTable dictionary(int column);
+
+    /**
+     * Decodes a whole row back into a Row object
+     * @param row the index of the row
+     * @return the decoded row
+     */
+    public default Row decode(int row) {
+        Row decoded = new Row((String) null);
+        List<String> columnNames = this.getColumnNames();
+        for (int column = 0; column < columnNames.size(); column++) {
+            int code = this.code(row, column);
+            if (code >= 0) {
+                decoded.setAttributeValue(columnNames.get(column), this.dictionary(column).stringOf(code));
+            }
+        }
+        return decoded;
+    }
+}
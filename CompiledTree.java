@@ -0,0 +1,292 @@
+package sol;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import src.ITreeNode;
+import src.Row;
+
+/**
+ * A decision tree compiled into a single MethodHandle that decides the rows of a ColumnStore by their index.
+ * Every AttributeNode becomes a table switch on the code of the row's value for its attribute, mapped to the
+ * edge it follows by a table built from the column's dictionary, and every DecisionLeaf a constant, so deciding a
+ * row never reads, hashes or compares a string. Trees with more nodes than the limit are not compiled and decode
+ * each row for the interpreter instead, since very large handle graphs take long to build.
+ *
+ * Row objects are not compiled: their values are strings, so routing them costs the same lookup per node as the
+ * interpreter, and on top of that the JIT does not inline through the cases of a table switch, which makes a
+ * compiled handle slower than the virtual getDecision calls it replaces.
+ */
+public class CompiledTree {
+    /**
+     * The node count above which trees are interpreted instead of compiled
+     */
+    public static final int DEFAULT_MAX_NODES = 10000;
+
+    // a route that makes the switch fall through to the node's default value
+    private static final int DEFAULT_ROUTE = -1;
+
+    private static final MethodHandle INTERPRET;
+    private static final MethodHandle DECODE;
+    private static final MethodHandle ROUTE;
+    private static final MethodHandle MISSING;
+    private static final MethodHandle UNSEEN;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            INTERPRET = lookup.findVirtual(ITreeNode.class, "getDecision",
+                    MethodType.methodType(String.class, Row.class));
+            DECODE = lookup.findVirtual(ColumnStore.class, "decode", MethodType.methodType(Row.class, int.class));
+            ROUTE = lookup.findVirtual(CodeRoute.class, "route", MethodType.methodType(int.class, int.class));
+            MISSING = lookup.findStatic(CompiledTree.class, "missing",
+                    MethodType.methodType(String.class, String.class, int.class));
+            UNSEEN = lookup.findStatic(CompiledTree.class, "unseen",
+                    MethodType.methodType(String.class, ColumnStore.class, int.class, String.class, int.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final MethodHandle decision;
+    private final boolean compiled;
+
+    /**
+     * Constructor for a CompiledTree
+     * @param decision a handle of type (int)String that makes the tree's decision for a row of the store
+     * @param compiled whether the handle is compiled or calls the interpreter
+     */
+    private CompiledTree(MethodHandle decision, boolean compiled) {
+        this.decision = decision;
+        this.compiled = compiled;
+    }
+
+    /**
+     * Compiles a tree for the rows of a store, falling back on the interpreter if it has more than
+     * DEFAULT_MAX_NODES nodes
+     * @param root the root of the tree
+     * @param store the store whose rows are decided, whose dictionaries must not gain new values afterwards
+     * @return the compiled tree
+     */
+    public static CompiledTree compile(ITreeNode root, ColumnStore store) {
+        return compile(root, store, DEFAULT_MAX_NODES);
+    }
+
+    /**
+     * Compiles a tree for the rows of a store, falling back on the interpreter if it has more than maxNodes nodes
+     * @param root the root of the tree
+     * @param store the store whose rows are decided, whose dictionaries must not gain new values afterwards
+     * @param maxNodes the largest number of distinct nodes to compile
+     * @return the compiled tree
+     */
+    public static CompiledTree compile(ITreeNode root, ColumnStore store, int maxNodes) {
+        if (countNodes(root, new IdentityHashMap<>(), maxNodes) > maxNodes) {
+            return new CompiledTree(interpret(root, store), false);
+        }
+        return new CompiledTree(compileNode(root, store, new IdentityHashMap<>()), true);
+    }
+
+    /**
+     * Makes the tree's decision for a row of the store
+     * @param row the index of the row in the store
+     * @return the decision of the tree
+     */
+    public String getDecision(int row) {
+        try {
+            return (String) this.decision.invokeExact(row);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    /**
+     * Checks whether the tree was compiled or fell back on the interpreter
+     * @return true if the tree was compiled
+     */
+    public boolean isCompiled() {
+        return this.compiled;
+    }
+
+    /**
+     * Builds the handle for a node. An AttributeNode reads the code of the row's value, maps it to the index of
+     * its edge through a table, and switches on that index. Rows missing the attribute and values none of the
+     * edges match are mapped by the node's policies, so FAIL gets a case of its own that throws. Handles are
+     * remembered so that a subtree shared by several parents is only compiled once. Node types other than
+     * AttributeNode and DecisionLeaf decode the row for the interpreter
+     * @param node the node to compile
+     * @param store the store the rows are read from
+     * @param handles the handles built so far
+     * @return a handle of type (int)String
+     */
+    private static MethodHandle compileNode(ITreeNode node, ColumnStore store, Map<ITreeNode, MethodHandle> handles) {
+        MethodHandle handle = handles.get(node);
+        if (handle != null) {
+            return handle;
+        }
+        if (node instanceof DecisionLeaf leaf) {
+            handle = MethodHandles.dropArguments(MethodHandles.constant(String.class, leaf.getValue()), 0, int.class);
+        } else if (node instanceof AttributeNode attributeNode) {
+            List<ValueEdge> edges = attributeNode.getOutgoingEdges();
+            int column = store.columnIndex(attributeNode.getAttribute());
+            int failMissing = edges.size();
+            int failUnseen = edges.size() + 1;
+            MethodHandle[] cases = new MethodHandle[edges.size() + 2];
+            for (int i = 0; i < edges.size(); i++) {
+                cases[i] = MethodHandles.dropArguments(compileNode(edges.get(i).getChild(), store, handles), 0,
+                        int.class);
+            }
+            cases[failMissing] = MethodHandles.dropArguments(
+                    MethodHandles.insertArguments(MISSING, 0, attributeNode.getAttribute()), 0, int.class);
+            cases[failUnseen] = MethodHandles.dropArguments(
+                    MethodHandles.insertArguments(UNSEEN, 0, store, column, attributeNode.getAttribute()), 0,
+                    int.class);
+            MethodHandle fallback = MethodHandles.dropArguments(
+                    MethodHandles.constant(String.class, attributeNode.getDefault()), 0, int.class, int.class);
+            MethodHandle table = MethodHandles.tableSwitch(fallback, cases);
+            CodeRoute route = new CodeRoute(store, column,
+                    routeTable(attributeNode, store, column, failMissing, failUnseen));
+            handle = MethodHandles.foldArguments(table, ROUTE.bindTo(route));
+        } else {
+            handle = interpret(node, store);
+        }
+        handles.put(node, handle);
+        return handle;
+    }
+
+    /**
+     * Builds a handle that decodes the row and calls the interpreter
+     * @param node the node to interpret
+     * @param store the store the rows are read from
+     * @return a handle of type (int)String
+     */
+    private static MethodHandle interpret(ITreeNode node, ColumnStore store) {
+        return MethodHandles.filterArguments(INTERPRET.bindTo(node), 0, DECODE.bindTo(store));
+    }
+
+    /**
+     * Builds the table that maps the codes of a node's column to the index of the edge each value follows. The
+     * first entry is the route of rows missing the attribute and the last the route of values the dictionary did
+     * not have when the table was built, with the routes of the codes in between
+     * @param node the node to build the table for
+     * @param store the store the rows are read from
+     * @param column the index of the node's column in the store, or -1 if the store does not have it
+     * @param failMissing the route of the case that fails on a missing attribute
+     * @param failUnseen the route of the case that fails on an unseen value
+     * @return the table of routes
+     */
+    private static int[] routeTable(AttributeNode node, ColumnStore store, int column, int failMissing,
+                                    int failUnseen) {
+        int numCodes = column < 0 ? 0 : store.dictionary(column).size();
+        int[] routes = new int[numCodes + 2];
+        int unseen = policyRoute(node, node.getUnseenPolicy(), failUnseen);
+        routes[0] = policyRoute(node, node.getMissingPolicy(), failMissing);
+        for (int code = 0; code < numCodes; code++) {
+            int edgeIndex = node.edgeIndex(store.dictionary(column).stringOf(code));
+            routes[code + 1] = edgeIndex < 0 ? unseen : edgeIndex;
+        }
+        routes[numCodes + 1] = unseen;
+        return routes;
+    }
+
+    /**
+     * Finds the route a policy sends rows to
+     * @param node the node the policy belongs to
+     * @param policy the policy
+     * @param failRoute the route of the case that throws, used by FAIL
+     * @return the index of the edge to follow, DEFAULT_ROUTE for the default value, or failRoute
+     */
+    private static int policyRoute(AttributeNode node, MissingValuePolicy policy, int failRoute) {
+        switch (policy) {
+            case DEFAULT -> {
+                return DEFAULT_ROUTE;
+            }
+            case MAJORITY_BRANCH -> {
+                return node.getMajorityIndex();
+            }
+            case FAIL -> {
+                return failRoute;
+            }
+        }
+        throw new RuntimeException("Non-Exhaustive Switch Case");
+    }
+
+    /**
+     * Fails a decision for a row missing an attribute, like the FAIL policy of the interpreter
+     * @param attribute the attribute the row is missing
+     * @param row the index of the row
+     * @return never returns
+     */
+    private static String missing(String attribute, int row) {
+        throw new RuntimeException("Attribute '" + attribute + "' did not exist in datum");
+    }
+
+    /**
+     * Fails a decision for a value that was not seen in training, like the FAIL policy of the interpreter
+     * @param store the store the row is read from
+     * @param column the index of the attribute's column
+     * @param attribute the attribute
+     * @param row the index of the row
+     * @return never returns
+     */
+    private static String unseen(ColumnStore store, int column, String attribute, int row) {
+        throw new RuntimeException("Value '" + store.dictionary(column).stringOf(store.code(row, column))
+                + "' of attribute '" + attribute + "' was not seen in training");
+    }
+
+    /**
+     * Counts the distinct nodes of a tree, stopping once the count passes a limit
+     * @param node the current node
+     * @param seen the nodes counted so far
+     * @param limit the count to stop at
+     * @return the number of distinct nodes, or a number above limit if there are more than limit
+     */
+    private static int countNodes(ITreeNode node, Map<ITreeNode, Boolean> seen, int limit) {
+        if (seen.size() > limit || seen.put(node, Boolean.TRUE) != null) {
+            return seen.size();
+        }
+        if (node instanceof AttributeNode attributeNode) {
+            for (ValueEdge edge : attributeNode.getOutgoingEdges()) {
+                countNodes(edge.getChild(), seen, limit);
+            }
+        }
+        return seen.size();
+    }
+
+    /**
+     * The switch value of one AttributeNode for the rows of a store: reads the code of the row's value for the
+     * node's column and looks up its route
+     */
+    private static class CodeRoute {
+        private final ColumnStore store;
+        private final int column;
+        private final int[] routes;
+
+        /**
+         * Constructor for a CodeRoute
+         * @param store the store the rows are read from
+         * @param column the index of the node's column in the store, or -1 if the store does not have it
+         * @param routes the node's table of routes, as built by routeTable
+         */
+        CodeRoute(ColumnStore store, int column, int[] routes) {
+            this.store = store;
+            this.column = column;
+            this.routes = routes;
+        }
+
+        /**
+         * Finds the route of a row
+         * @param row the index of the row
+         * @return the index of the edge to follow, DEFAULT_ROUTE for the default value, or a case that throws
+         */
+        int route(int row) {
+            int slot = this.column < 0 ? 0 : this.store.code(row, this.column) + 1;
+            return slot < this.routes.length - 1 ? this.routes[slot] : this.routes[this.routes.length - 1];
+        }
+    }
+}
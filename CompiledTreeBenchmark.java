@@ -0,0 +1,98 @@
+package sol;
+
+import java.util.List;
+
+import src.AttributeSelection;
+import src.Row;
+
+/**
+ * A benchmark comparing decisions made by the recursive getDecision of the nodes on Row objects against the same
+ * tree compiled into a CompiledTree that decides the rows of a store by their codes. Run it with enough warm-up
+ * that both paths are fully JIT compiled before they are timed.
+ */
+public class CompiledTreeBenchmark {
+    private static final int NUM_ROWS = 20000;
+    private static final int NUM_ATTRIBUTES = 6;
+    private static final int NUM_VALUES = 4;
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int MEASURED_ROUNDS = 50;
+
+    /**
+     * Trains a tree on synthetic data and prints the average time per decision of each path
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        List<Row> rows = fresh();
+        List<String> attributes = BenchmarkData.attributes(NUM_ATTRIBUTES);
+        Dataset training = new Dataset(attributes, rows, AttributeSelection.ASCENDING_ALPHABETICAL);
+        TreeGenerator generator = new TreeGenerator();
+        generator.generateTree(training, BenchmarkData.TARGET);
+        ColumnStore store = OffHeapColumnStore.encode(attributes, rows);
+        CompiledTree compiled = generator.compile(store);
+        System.out.println("Compiled: " + compiled.isCompiled());
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            score(generator, fresh());
+            score(compiled);
+        }
+        long interpretedNanos = 0;
+        long compiledNanos = 0;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            interpretedNanos += score(generator, fresh());
+            compiledNanos += score(compiled);
+        }
+        long decisions = (long) NUM_ROWS * MEASURED_ROUNDS;
+        System.out.printf("Interpreted: %.1f ns/decision%n", (double) interpretedNanos / decisions);
+        System.out.printf("Compiled:    %.1f ns/decision%n", (double) compiledNanos / decisions);
+    }
+
+    /**
+     * Generates the benchmark rows again, so that the attribute accesses every decision records do not pile up on
+     * the same rows from round to round
+     * @return the rows to decide
+     */
+    private static List<Row> fresh() {
+        return BenchmarkData.generate(NUM_ROWS, NUM_ATTRIBUTES, NUM_VALUES, 42);
+    }
+
+    /**
+     * Makes a decision for every row through the interpreter and times it
+     * @param generator the trained generator
+     * @param rows the rows to decide
+     * @return the time taken in nanoseconds
+     */
+    private static long score(TreeGenerator generator, List<Row> rows) {
+        long start = System.nanoTime();
+        int positives = 0;
+        for (Row row : rows) {
+            if (generator.getDecision(row).equals("yes")) {
+                positives++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (positives < 0) {
+            System.out.println(positives);
+        }
+        return elapsed;
+    }
+
+    /**
+     * Makes a decision for every row of the store through the compiled tree and times it
+     * @param compiled the compiled tree
+     * @return the time taken in nanoseconds
+     */
+    private static long score(CompiledTree compiled) {
+        long start = System.nanoTime();
+        int positives = 0;
+        for (int row = 0; row < NUM_ROWS; row++) {
+            if (compiled.getDecision(row).equals("yes")) {
+                positives++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (positives < 0) {
+            System.out.println(positives);
+        }
+        return elapsed;
+    }
+}
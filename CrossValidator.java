@@ -0,0 +1,241 @@
+package sol;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import src.AttributeSelection;
+import src.Row;
+
+/**
+ * A class that runs k-fold cross-validation over a single encoded dataset. The data is parsed and encoded once,
+ * each fold is a range of a shuffled array of row indices into the shared store, and the folds are trained and
+ * scored in parallel. Rows with no value for the target are left out of every fold.
+ */
+public class CrossValidator {
+    private final EncodedDataset data;
+    private final String targetAttribute;
+
+    /**
+     * Constructor for a CrossValidator
+     * @param data the dataset to split into folds
+     * @param targetAttribute the attribute to predict
+     */
+    public CrossValidator(EncodedDataset data, String targetAttribute) {
+        this.data = data;
+        this.targetAttribute = targetAttribute;
+    }
+
+    /**
+     * Streams a CSV file into an encoded dataset once and makes a CrossValidator for it
+     * @param filepath the path to the CSV file
+     * @param targetAttribute the attribute to predict
+     * @param attributeSelection the way the trees select attributes
+     * @return the new CrossValidator
+     */
+    public static CrossValidator fromFile(String filepath, String targetAttribute,
+                                          AttributeSelection attributeSelection) {
+        return new CrossValidator(EncodedDataset.fromCsv(filepath, null, attributeSelection), targetAttribute);
+    }
+
+    /**
+     * Runs k-fold cross-validation with folds drawn uniformly at random
+     * @param k the number of folds
+     * @param seed the seed for shuffling the rows
+     * @param threads the number of folds to train at once
+     * @return the accuracy on the held-out rows of each fold
+     */
+    public double[] kFold(int k, long seed, int threads) {
+        int[] order = this.labelledRows();
+        this.checkFolds(k, order.length);
+        shuffle(order, new Random(seed));
+        return this.run(order, k, threads);
+    }
+
+    /**
+     * Runs stratified k-fold cross-validation, where every fold gets close to the same share of each value of
+     * the target attribute as the whole dataset
+     * @param k the number of folds
+     * @param seed the seed for shuffling the rows
+     * @param threads the number of folds to train at once
+     * @return the accuracy on the held-out rows of each fold
+     */
+    public double[] stratifiedKFold(int k, long seed, int threads) {
+        int[][] folds = this.stratifiedFolds(k, seed);
+        int[] order = new int[Arrays.stream(folds).mapToInt(fold -> fold.length).sum()];
+        int position = 0;
+        int[] bounds = new int[k + 1];
+        for (int i = 0; i < k; i++) {
+            System.arraycopy(folds[i], 0, order, position, folds[i].length);
+            position += folds[i].length;
+            bounds[i + 1] = position;
+        }
+        return this.run(order, bounds, threads);
+    }
+
+    /**
+     * Splits the rows into stratified folds. The rows of each class are dealt round robin into the folds,
+     * continuing the count from class to class, so each fold's count of a class is within one of the class's
+     * share
+     * @param k the number of folds
+     * @param seed the seed for shuffling the rows
+     * @return the rows of each fold
+     */
+    int[][] stratifiedFolds(int k, long seed) {
+        int[] rows = this.labelledRows();
+        this.checkFolds(k, rows.length);
+        shuffle(rows, new Random(seed));
+        int column = this.data.columnOf(this.targetAttribute);
+        ColumnStore store = this.data.getStore();
+        int[] classCounts = new int[store.dictionary(column).size()];
+        for (int row : rows) {
+            classCounts[store.code(row, column)]++;
+        }
+        int[] classStarts = new int[classCounts.length];
+        for (int code = 1; code < classCounts.length; code++) {
+            classStarts[code] = classStarts[code - 1] + classCounts[code - 1];
+        }
+        int[] byClass = new int[rows.length];
+        int[] filled = classStarts.clone();
+        for (int row : rows) {
+            int code = store.code(row, column);
+            byClass[filled[code]++] = row;
+        }
+        int[][] folds = new int[k][];
+        for (int i = 0; i < k; i++) {
+            // fold i gets positions i, i + k, i + 2k and so on
+            folds[i] = new int[(byClass.length - i + k - 1) / k];
+            for (int j = 0; j < folds[i].length; j++) {
+                folds[i][j] = byClass[i + j * k];
+            }
+        }
+        return folds;
+    }
+
+    /**
+     * Finds the rows that have a value for the target. The others can be neither trained on nor scored, so
+     * they are left out of every fold
+     * @return the indices of the labelled rows, in store order
+     */
+    private int[] labelledRows() {
+        int column = this.data.columnOf(this.targetAttribute);
+        ColumnStore store = this.data.getStore();
+        return Arrays.stream(this.data.getRowIndices()).filter(row -> store.code(row, column) >= 0).toArray();
+    }
+
+    /**
+     * Runs the folds over equal ranges of a row order
+     * @param order the rows in the order they are split into folds
+     * @param k the number of folds
+     * @param threads the number of folds to train at once
+     * @return the accuracy of each fold
+     */
+    private double[] run(int[] order, int k, int threads) {
+        int[] bounds = new int[k + 1];
+        for (int i = 0; i <= k; i++) {
+            bounds[i] = (int) ((long) i * order.length / k);
+        }
+        return this.run(order, bounds, threads);
+    }
+
+    /**
+     * Trains a tree for each fold on every row outside the fold's range and scores it on the rows inside
+     * @param order the rows in the order they are split into folds
+     * @param bounds the start of each fold's range, followed by the end of the last range
+     * @param threads the number of folds to train at once
+     * @return the accuracy of each fold
+     */
+    private double[] run(int[] order, int[] bounds, int threads) {
+        int k = bounds.length - 1;
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, k)));
+        try {
+            List<Future<Double>> results = new ArrayList<>();
+            for (int i = 0; i < k; i++) {
+                int start = bounds[i];
+                int end = bounds[i + 1];
+                results.add(executor.submit(() -> this.scoreFold(order, start, end)));
+            }
+            double[] accuracies = new double[k];
+            for (int i = 0; i < k; i++) {
+                accuracies[i] = results.get(i).get();
+            }
+            return accuracies;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while cross-validating", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Fold failed to train", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Trains on every row outside a range of the order and scores on the rows inside it
+     * @param order the rows in the order they are split into folds
+     * @param start the first position of the held-out range
+     * @param end the position after the held-out range
+     * @return the accuracy on the held-out rows
+     */
+    private double scoreFold(int[] order, int start, int end) {
+        int[] training = new int[order.length - (end - start)];
+        System.arraycopy(order, 0, training, 0, start);
+        System.arraycopy(order, end, training, start, order.length - end);
+        TreeGenerator generator = new TreeGenerator();
+        generator.generateTree(new EncodedDataset(this.data.getStore(), training, this.data.getAttributeList(),
+                this.data.getSelectionType()), this.targetAttribute);
+
+        ColumnStore store = this.data.getStore();
+        double numCorrectClassifications = 0;
+        for (int i = start; i < end; i++) {
+            Row datum = store.decode(order[i]);
+            if (generator.getDecision(datum).equals(datum.getAttributeValue(this.targetAttribute))) {
+                numCorrectClassifications += 1;
+            }
+        }
+        return numCorrectClassifications / (end - start);
+    }
+
+    /**
+     * Checks that the number of folds is at least two and no more than the number of rows
+     * @param k the number of folds
+     * @param numRows the number of rows to split
+     */
+    private void checkFolds(int k, int numRows) {
+        if (k < 2 || k > numRows) {
+            throw new IllegalArgumentException("Number of folds must be between 2 and " + numRows + ": " + k);
+        }
+    }
+
+    /**
+     * Calculates the mean of an array of doubles
+     * @param arr array of doubles
+     * @return - average of the array
+     */
+    public static double mean(double[] arr) {
+        double sum = 0;
+        for (double d : arr) {
+            sum += d;
+        }
+        return sum / arr.length;
+    }
+
+    /**
+     * Shuffles an array in place with the Fisher-Yates algorithm
+     * @param array the array to shuffle
+     * @param random the source of randomness
+     */
+    private static void shuffle(int[] array, Random random) {
+        for (int i = array.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = array[i];
+            array[i] = array[j];
+            array[j] = swap;
+        }
+    }
+}
@@ -1,20 +1,21 @@
 package sol;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.function.Predicate;
 
 import src.AttributeSelection;
-import src.IDataset;
+import src.DecisionTreeCSVParser;
 import src.Row;
 
 /**
- * A class representing a training dataset for the decision tree
+ * A class representing a training dataset for the decision tree, whose rows are kept in a list
  */
-public class Dataset implements IDataset{
-    private AttributeSelection selectionType;
+public class Dataset extends AbstractDataset {
     private List<Row> dataObjects;
-    private List<String> attributeList;
 
     /**
      * Constructor for a Dataset object
@@ -23,58 +24,70 @@ public class Dataset implements IDataset{
      * @param attributeSelection - an enum for which way to select attributes
      */
     public Dataset(List<String> attributeList, List<Row> dataObjects, AttributeSelection attributeSelection) {
-        this.attributeList = new ArrayList<String>(attributeList);
+        super(attributeList, attributeSelection);
         this.dataObjects = new ArrayList<Row>(dataObjects);
-        this.selectionType = attributeSelection;
     }
 
     /**
-     * This method, depending on the enum of the dataset, returns an attribute from the list
-     * @return the attribute to split on, from the attribute list which shrinks with each partition
+     * Parses a Dataset straight from a CSV file, reading only the given columns and keeping only the rows that
+     * pass a filter. The columns become the attribute list, so it never has to be found from the rows
+     * @param filepath the path to the CSV file
+     * @param columns the columns to read, including the target attribute
+     * @param filter a test on each projected row, or null to keep every row
+     * @param attributeSelection - an enum for which way to select attributes
+     * @return the new dataset
      */
-    public String getAttributeToSplitOn() {
-        switch (this.selectionType) {
-            case ASCENDING_ALPHABETICAL -> {
-                return this.attributeList.stream().sorted().toList().get(0);
-            }
-            case DESCENDING_ALPHABETICAL -> {
-                return this.attributeList.stream().sorted().toList().get(this.attributeList.size() - 1);
-            }
-            case RANDOM -> {
-                Random random = new Random();
-                int upperBound = this.attributeList.size();
-                int randomNum = random.nextInt(upperBound);
-                return this.attributeList.stream().sorted().toList().get(randomNum);
-            }
-        }
-        throw new RuntimeException("Non-Exhaustive Switch Case");
+    public static Dataset fromCsv(String filepath, List<String> columns, Predicate<Row> filter,
+                                  AttributeSelection attributeSelection) {
+        return new Dataset(columns, DecisionTreeCSVParser.parse(filepath, columns, filter), attributeSelection);
     }
 
     /**
-     * Method to get attribute list
-     * @return attribute list
+     * Counts the rows for every pair of a value of an attribute and a value of the target attribute. The sums
+     * of these counts are what information gain is computed from
+     * @param attribute the attribute to group the rows by
+     * @param targetAttribute the attribute to count the values of within each group
+     * @return a map from each value of the attribute to the counts of the target values in its rows
      */
     @Override
-    public List<String> getAttributeList() {
-        return this.attributeList;
+    protected Map<String, Map<String, Integer>> countByValue(String attribute, String targetAttribute) {
+        Map<String, Map<String, Integer>> counts = new LinkedHashMap<>();
+        for (Row row : this.getDataObjects()) {
+            counts.computeIfAbsent(row.getAttributeValue(attribute), v -> new LinkedHashMap<>())
+                    .merge(row.getAttributeValue(targetAttribute), 1, Integer::sum);
+        }
+        return counts;
     }
 
     /**
-     * Method to get the data objects
-     * @return the list of data objects
+     * Draws a uniform random sample of the rows with reservoir sampling, in a single pass over the data. If
+     * the dataset is no bigger than the sample size, the dataset itself is returned
+     * @param sampleSize the number of rows to draw
+     * @param random the source of randomness
+     * @return a dataset with the same attributes holding the sampled rows
      */
     @Override
-    public List<Row> getDataObjects() {
-        return this.dataObjects;
+    public Dataset sample(int sampleSize, Random random) {
+        if (this.size() <= sampleSize) {
+            return this;
+        }
+        List<Row> reservoir = new ArrayList<>(this.dataObjects.subList(0, sampleSize));
+        for (int i = sampleSize; i < this.dataObjects.size(); i++) {
+            int j = random.nextInt(i + 1);
+            if (j < sampleSize) {
+                reservoir.set(j, this.dataObjects.get(i));
+            }
+        }
+        return new Dataset(this.getAttributeList(), reservoir, this.getSelectionType());
     }
 
     /**
-     * Method to get the selection type
-     * @return the selection type enum
+     * Method to get the data objects
+     * @return the list of data objects
      */
     @Override
-    public AttributeSelection getSelectionType() {
-        return this.selectionType;
+    public List<Row> getDataObjects() {
+        return this.dataObjects;
     }
 
     /**
@@ -93,6 +106,7 @@ public class Dataset implements IDataset{
      * @param distinct whether you want to list to have repeat values
      * @return the list of values of the attribute (distinct or not)
      */
+    @Override
     public ArrayList<String> getTargetValues(String targetAttribute, Boolean distinct) {
         ArrayList<String> empty = new ArrayList<>();
         for (Row row: this.dataObjects) {
@@ -107,47 +121,37 @@ public class Dataset implements IDataset{
         return empty;
     }
 
-    /**
-     * Checks if the list of attributes is empty
-     * @return a boolean if the size of the list is zero
-     */
-    public boolean attributeListEmpty() {
-        if (this.attributeList.size() == 0) {
-            return true;
-        } else
-            return false;
-    }
-
     /**
      * Clones the current dataset by returning a new dataset with a new attribute list with the
      * parameter attribute removed
      * @param attributeToRemove the attribute to remove from the attribute list
      * @return the new dataset with the target attribute removed
      */
+    @Override
     public Dataset cloneWithRemoveFromAttribute(String attributeToRemove) {
-        ArrayList<String> newAttributeList = new ArrayList<>(this.attributeList);
+        ArrayList<String> newAttributeList = new ArrayList<>(this.getAttributeList());
         newAttributeList.remove(attributeToRemove);
-        return new Dataset(newAttributeList, this.dataObjects, this.selectionType);
+        return new Dataset(newAttributeList, this.dataObjects, this.getSelectionType());
     }
 
     /**
      * Method to split the dataset into different datasets based on the distinct values of the attribute
-     * to split on
+     * to split on. The rows are grouped in a single pass
      * @param attributeToSplitOn the attribute by which we want to split the datasets on
      * @return a list of datasets divided into different ones based on the distinct values of the attributes
      */
+    @Override
     public List<Dataset> partition(String attributeToSplitOn) {
+        // one pass over the rows, grouping them in the order their values first appear
+        Map<String, List<Row>> groups = new LinkedHashMap<>();
+        for (Row row : this.dataObjects) {
+            groups.computeIfAbsent(row.getAttributeValue(attributeToSplitOn), v -> new ArrayList<>()).add(row);
+        }
+        ArrayList<String> newAttributeList = new ArrayList<>(this.getAttributeList());
+        newAttributeList.remove(attributeToSplitOn);
         ArrayList<Dataset> empty = new ArrayList<>();
-        for (String value : this.getTargetValues(attributeToSplitOn, true)) {
-            ArrayList<Row> newOne = new ArrayList<>();
-            for (Row row : this.dataObjects) {
-                if (row.getAttributeValue(attributeToSplitOn).equals(value)) {
-                    newOne.add(row);
-                }
-            }
-            ArrayList<String> newAttributeList = new ArrayList<>(this.attributeList);
-            newAttributeList.remove(attributeToSplitOn);
-            empty.add(new Dataset(newAttributeList, newOne, this.selectionType));
+        for (List<Row> newOne : groups.values()) {
+            empty.add(new Dataset(newAttributeList, newOne, this.getSelectionType()));
         }
         return empty;
     }
@@ -159,6 +163,7 @@ public class Dataset implements IDataset{
      * @param targetAttribute the attribute which we are trying to find the most common of
      * @return attribute which is the most common
      */
+    @Override
     public String getDefault(String targetAttribute) {
         if (this.size() == 0) {
             throw new IndexOutOfBoundsException("Dataset is Empty");
@@ -172,6 +177,7 @@ public class Dataset implements IDataset{
      * @param targetAttribute the attribute for which to check if all are the same
      * @return if the size of the distinct list is one, the method returns true
      */
+    @Override
     public boolean sameOutcome(String targetAttribute) {
         ArrayList<String> outcomes = this.getTargetValues(targetAttribute, true);
         if (outcomes.size() == 1) {
@@ -180,41 +186,4 @@ public class Dataset implements IDataset{
         return false;
     }
 
-    /**
-     * Calculates the most frequent string from a given list. If the list is empty, it throws an exception. First
-     * it sorts the list, and then it starts comparing the values by comparing to each past value. It will go through
-     * the entire list and if there is a most common value, it returns that value. If the values are the same, it returns
-     * one at random.
-     * @param strings a list of strings for which to find the most commmon element
-     * @return the most common string in the list inputted
-     */
-    public String mostFrequent(List<String> strings) {
-        if (strings.isEmpty()) {
-            throw new IndexOutOfBoundsException("List is Empty");
-        }
-        List<String> sortedStrings = strings.stream().sorted().toList();
-        String currentString = sortedStrings.get(0);
-        int currentFrequency = 1;
-        String mostFrequentString = currentString;
-        int highestFrequency = currentFrequency;
-
-        for (int i = 1; i < sortedStrings.size(); i++) {
-            String s = sortedStrings.get(i);
-            if (s.equals(currentString)) {
-                currentFrequency++;
-            } else {
-                if (currentFrequency > highestFrequency) {
-                    highestFrequency = currentFrequency;
-                    mostFrequentString = currentString;
-                }
-                currentString = s;
-                currentFrequency = 1;
-            }
-        }
-        if (currentFrequency > highestFrequency) {
-            mostFrequentString = currentString;
-        }
-        return mostFrequentString;
-    }
-
 }
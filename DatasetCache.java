@@ -0,0 +1,348 @@
+package sol;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+
+import src.AttributeSelection;
+import src.SymbolTable;
+
+/**
+ * A class that caches parsed and encoded CSV files on disk. The first load of a file parses it, encodes it into
+ * an OffHeapColumnStore and writes the columns to a binary cache file. Later loads of the same unchanged file
+ * memory-map the cached columns instead of parsing, so they start almost instantly. A cache file is only used
+ * when the file's path, size, modification time and SHA-256 content hash all match the ones it was written for.
+ *
+ * The cache file is a header followed by the columns. The header holds the key of the file, the number of rows,
+ * and each column's name and dictionary. Each column is then the rows' four-byte little-endian codes.
+ */
+public class DatasetCache {
+    private static final int MAGIC = 0x44544331;
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".dtcache";
+    private static final int WRITE_CHUNK = 1 << 16;
+
+    private final Path cacheDirectory;
+
+    /**
+     * Constructor for a DatasetCache
+     * @param cacheDirectory the directory to keep the cache files in, which is created if needed
+     */
+    public DatasetCache(Path cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    /**
+     * Loads a CSV file as an EncodedDataset over all of its columns, from the cache if possible
+     * @param csvPath the path to the CSV file
+     * @param attributeSelection - an enum for which way to select attributes
+     * @return the dataset
+     */
+    public EncodedDataset load(String csvPath, AttributeSelection attributeSelection) {
+        ColumnStore store = this.loadStore(csvPath);
+        return new EncodedDataset(store, store.getColumnNames(), attributeSelection);
+    }
+
+    /**
+     * Loads the column store of a CSV file, mapping it from the cache if the cache is up to date and otherwise
+     * parsing the file and writing a new cache file. The cache never fails a load that would work without it: a
+     * cache file that is stale, short or corrupt is dropped and the file parsed again, and a cache file that
+     * cannot be written is skipped
+     * @param csvPath the path to the CSV file
+     * @return the column store
+     */
+    public ColumnStore loadStore(String csvPath) {
+        FileKey key;
+        try {
+            key = FileKey.of(Path.of(csvPath).toAbsolutePath());
+        } catch (IOException e) {
+            throw new UncheckedIOException("IOException when reading file: " + csvPath, e);
+        }
+        Path cacheFile = this.cacheFileFor(csvPath);
+        if (Files.exists(cacheFile)) {
+            OffHeapColumnStore cached;
+            try {
+                cached = read(cacheFile, key);
+            } catch (IOException | RuntimeException e) {
+                // a header too broken to read is treated the same as one for another version of the file
+                cached = null;
+            }
+            if (cached != null) {
+                return cached;
+            }
+            drop(cacheFile);
+        }
+        OffHeapColumnStore store = OffHeapColumnStore.fromCsv(csvPath, null);
+        try {
+            Files.createDirectories(this.cacheDirectory);
+            write(cacheFile, key, store);
+        } catch (IOException e) {
+            drop(cacheFile);
+        }
+        return store;
+    }
+
+    /**
+     * Deletes a cache file that cannot be used, ignoring failures since the next load will try again
+     * @param cacheFile the cache file
+     */
+    private static void drop(Path cacheFile) {
+        try {
+            Files.deleteIfExists(cacheFile);
+        } catch (IOException e) {
+            // a file that cannot be deleted is replaced or dropped again by a later load
+        }
+    }
+
+    /**
+     * Finds the cache file for a CSV file, which is named by a hash of the CSV file's absolute path
+     * @param csvPath the path to the CSV file
+     * @return the path of the cache file
+     */
+    Path cacheFileFor(String csvPath) {
+        byte[] pathHash = sha256().digest(Path.of(csvPath).toAbsolutePath().toString()
+                .getBytes(StandardCharsets.UTF_8));
+        return this.cacheDirectory.resolve(HexFormat.of().formatHex(pathHash, 0, 16) + SUFFIX);
+    }
+
+    /**
+     * Reads a cache file, mapping its columns
+     * @param cacheFile the cache file
+     * @param key the key the cache file must have been written for
+     * @return the store, or null if the cache file is for a different version of the file or format
+     * @throws IOException if reading fails
+     */
+    private static OffHeapColumnStore read(Path cacheFile, FileKey key) throws IOException {
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+            ByteBuffer lengthBuffer = ByteBuffer.allocate(Integer.BYTES);
+            if (!readFully(channel, lengthBuffer, 0)) {
+                return null;
+            }
+            int headerLength = lengthBuffer.getInt(0);
+            if (headerLength <= 0 || headerLength > channel.size()) {
+                return null;
+            }
+            ByteBuffer header = ByteBuffer.allocate(headerLength);
+            if (!readFully(channel, header, Integer.BYTES)) {
+                return null;
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(header.array()));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !FileKey.read(in).equals(key)) {
+                return null;
+            }
+            int rowCount = in.readInt();
+            int numColumns = in.readInt();
+            List<String> columnNames = new ArrayList<>();
+            SymbolTable[] dictionaries = new SymbolTable[numColumns];
+            SymbolTable symbols = new SymbolTable();
+            for (int column = 0; column < numColumns; column++) {
+                columnNames.add(symbols.intern(in.readUTF()));
+                dictionaries[column] = new SymbolTable();
+                int numValues = in.readInt();
+                for (int v = 0; v < numValues; v++) {
+                    dictionaries[column].symbolOf(symbols.intern(in.readUTF()));
+                }
+            }
+            long columnBytes = (long) rowCount * Integer.BYTES;
+            long dataStart = Integer.BYTES + headerLength;
+            if (channel.size() != dataStart + columnBytes * numColumns) {
+                return null;
+            }
+            ByteBuffer[] columns = new ByteBuffer[numColumns];
+            for (int column = 0; column < numColumns; column++) {
+                columns[column] = channel.map(FileChannel.MapMode.READ_ONLY, dataStart + column * columnBytes,
+                        columnBytes).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return new OffHeapColumnStore(columnNames, dictionaries, columns, rowCount);
+        }
+    }
+
+    /**
+     * Reads from a channel until a buffer is full, since a single read may return fewer bytes than asked for
+     * @param channel the channel to read from
+     * @param buffer the buffer to fill
+     * @param position the position in the file to start reading at
+     * @return whether the buffer was filled, which it is not if the file ends first
+     * @throws IOException if reading fails
+     */
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                return false;
+            }
+            position += read;
+        }
+        return true;
+    }
+
+    /**
+     * Writes a store to a cache file. The file is written under a temporary name and then moved into place, so
+     * a crash part way through never leaves a broken cache file behind
+     * @param cacheFile the cache file
+     * @param key the key of the CSV file the store was parsed from
+     * @param store the store to write
+     * @throws IOException if writing fails
+     */
+    private static void write(Path cacheFile, FileKey key, OffHeapColumnStore store) throws IOException {
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerBytes);
+        header.writeInt(MAGIC);
+        header.writeInt(VERSION);
+        key.write(header);
+        header.writeInt(store.rowCount());
+        header.writeInt(store.getColumnNames().size());
+        for (int column = 0; column < store.getColumnNames().size(); column++) {
+            header.writeUTF(store.getColumnNames().get(column));
+            SymbolTable dictionary = store.dictionary(column);
+            header.writeInt(dictionary.size());
+            for (int code = 0; code < dictionary.size(); code++) {
+                header.writeUTF(dictionary.stringOf(code));
+            }
+        }
+        header.flush();
+
+        Path temporary = Files.createTempFile(cacheFile.getParent(), "write", SUFFIX);
+        try {
+            try (OutputStream file = Files.newOutputStream(temporary);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+                out.writeInt(headerBytes.size());
+                headerBytes.writeTo(out);
+                ByteBuffer chunk = ByteBuffer.allocate(WRITE_CHUNK * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                for (int column = 0; column < store.getColumnNames().size(); column++) {
+                    for (int row = 0; row < store.rowCount(); row++) {
+                        chunk.putInt(store.code(row, column));
+                        if (!chunk.hasRemaining()) {
+                            out.write(chunk.array(), 0, chunk.position());
+                            chunk.clear();
+                        }
+                    }
+                    out.write(chunk.array(), 0, chunk.position());
+                    chunk.clear();
+                }
+            }
+            Files.move(temporary, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+    }
+
+    /**
+     * Makes a SHA-256 digest
+     * @return a new digest
+     */
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * The identity of a version of a CSV file: its path, size, modification time and content hash
+     */
+    private static class FileKey {
+        private final String path;
+        private final long size;
+        private final long modified;
+        private final byte[] hash;
+
+        /**
+         * Constructor for a FileKey
+         * @param path the absolute path of the file
+         * @param size the size of the file in bytes
+         * @param modified the modification time in milliseconds
+         * @param hash the SHA-256 hash of the contents
+         */
+        private FileKey(String path, long size, long modified, byte[] hash) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+
+        /**
+         * Makes the key of a file by reading its attributes and hashing its contents
+         * @param file the absolute path of the file
+         * @return the key
+         * @throws IOException if the file cannot be read
+         */
+        static FileKey of(Path file) throws IOException {
+            MessageDigest digest = sha256();
+            try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+            return new FileKey(file.toString(), Files.size(file), Files.getLastModifiedTime(file).toMillis(),
+                    digest.digest());
+        }
+
+        /**
+         * Reads a key written by write
+         * @param in the stream to read from
+         * @return the key
+         * @throws IOException if reading fails
+         */
+        static FileKey read(DataInputStream in) throws IOException {
+            String path = in.readUTF();
+            long size = in.readLong();
+            long modified = in.readLong();
+            byte[] hash = new byte[in.readInt()];
+            in.readFully(hash);
+            return new FileKey(path, size, modified, hash);
+        }
+
+        /**
+         * Writes the key
+         * @param out the stream to write to
+         * @throws IOException if writing fails
+         */
+        void write(DataOutputStream out) throws IOException {
+            out.writeUTF(this.path);
+            out.writeLong(this.size);
+            out.writeLong(this.modified);
+            out.writeInt(this.hash.length);
+            out.write(this.hash);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || this.getClass() != o.getClass()) {
+                return false;
+            }
+            FileKey key = (FileKey) o;
+            return this.path.equals(key.path) && this.size == key.size && this.modified == key.modified
+                    && Arrays.equals(this.hash, key.hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(this.hash);
+        }
+    }
+}
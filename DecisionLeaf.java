@@ -28,4 +28,12 @@ public class DecisionLeaf implements ITreeNode{
     public String getDecision(Row forDatum) {
         return this.value;
     }
+
+    /**
+     * Gets the decision stored in this leaf
+     * @return the decision
+     */
+    String getValue() {
+        return this.value;
+    }
 }
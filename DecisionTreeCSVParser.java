@@ -7,7 +7,10 @@ import org.apache.commons.csv.CSVRecord;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.function.Predicate;
 
 /**
  * Class with a method to parse a CSV file into a list of data objects.
@@ -23,19 +26,212 @@ public class DecisionTreeCSVParser {
      * provided csv file
      */
     public static List<Row> parse(String filepath) {
-        CSVFormat format = CSVFormat.RFC4180.withDelimiter(DELIMITER).withHeader();
-        CSVParser parser;
+        return parse(filepath, new SymbolTable());
+    }
 
-        try {
-            parser = new CSVParser(new FileReader(filepath), format);
+    /**
+     * Parses a CSV file, interning every column name and value through the
+     * given symbol table so that all rows share one instance of each string
+     *
+     * @param filepath the path to the CSV file relative to the project root
+     *                 directory
+     * @param symbols  the symbol table to intern names and values with
+     * @return - a list of data objects that correspond to the rows of the
+     * provided csv file
+     */
+    public static List<Row> parse(String filepath, SymbolTable symbols) {
+        return parse(filepath, null, null, symbols);
+    }
+
+    /**
+     * Parses only some of the columns of a CSV file, and only keeps the rows
+     * that pass a filter. Columns outside the projection are never copied out
+     * of the record, interned or stored in a Row.
+     *
+     * @param filepath the path to the CSV file relative to the project root
+     *                 directory
+     * @param columns  the columns to keep, or null to keep every column
+     * @param filter   a test on the projected row, or null to keep every row;
+     *                 the attributes it reads are not recorded in the
+     *                 access order of the rows it keeps
+     * @return - a list of data objects holding the projected columns of the
+     * rows that passed the filter
+     */
+    public static List<Row> parse(String filepath, Collection<String> columns,
+                                  Predicate<Row> filter) {
+        return parse(filepath, columns, filter, new SymbolTable());
+    }
+
+    /**
+     * Parses only some of the columns of a CSV file, and only keeps the rows
+     * that pass a filter, interning names and values through a symbol table
+     *
+     * @param filepath the path to the CSV file relative to the project root
+     *                 directory
+     * @param columns  the columns to keep, or null to keep every column
+     * @param filter   a test on the projected row, or null to keep every row
+     * @param symbols  the symbol table to intern names and values with
+     * @return - a list of data objects holding the projected columns of the
+     * rows that passed the filter
+     */
+    public static List<Row> parse(String filepath, Collection<String> columns,
+                                  Predicate<Row> filter, SymbolTable symbols) {
+        try (CSVParser parser = open(filepath)) {
+            List<String> headerNames = parser.getHeaderNames();
+            List<String> names = new ArrayList<>();
+            List<Integer> indices = new ArrayList<>();
+            if (columns == null) {
+                for (int i = 0; i < headerNames.size(); i++) {
+                    names.add(symbols.intern(headerNames.get(i)));
+                    indices.add(i);
+                }
+            } else {
+                for (String column : columns) {
+                    int index = headerNames.indexOf(column);
+                    if (index < 0) {
+                        throw new RuntimeException("Column '" + column
+                                + "' did not exist in file: " + filepath);
+                    }
+                    names.add(symbols.intern(column));
+                    indices.add(index);
+                }
+            }
+            return read(parser, new Schema(names), indices, filter, symbols);
         } catch (IOException e) {
             throw new RuntimeException(
                 "IOException when reading from file: " + filepath);
         }
+    }
+
+    /**
+     * Parses the columns of a CSV file that a schema names, for example one
+     * from inferSchema. Every row holds its values in the given schema
+     *
+     * @param filepath the path to the CSV file relative to the project root
+     *                 directory
+     * @param schema   the columns to keep, whose names must be in the header
+     * @return - a list of data objects holding the schema's columns of every
+     * row of the file
+     */
+    public static List<Row> parse(String filepath, Schema schema) {
+        return parse(filepath, schema, new SymbolTable());
+    }
+
+    /**
+     * Parses the columns of a CSV file that a schema names, interning the
+     * column names and values through a symbol table. The rows still hold
+     * their values in the given schema
+     *
+     * @param filepath the path to the CSV file relative to the project root
+     *                 directory
+     * @param schema   the columns to keep, whose names must be in the header
+     * @param symbols  the symbol table to intern names and values with
+     * @return - a list of data objects holding the schema's columns of every
+     * row of the file
+     */
+    public static List<Row> parse(String filepath, Schema schema, SymbolTable symbols) {
+        try (CSVParser parser = open(filepath)) {
+            List<Integer> indices = new ArrayList<>();
+            for (String column : schema.getColumnNames()) {
+                int index = parser.getHeaderNames().indexOf(column);
+                if (index < 0) {
+                    throw new RuntimeException("Column '" + column
+                            + "' did not exist in file: " + filepath);
+                }
+                symbols.symbolOf(column);
+                indices.add(index);
+            }
+            return read(parser, schema, indices, null, symbols);
+        } catch (IOException e) {
+            throw new RuntimeException(
+                "IOException when reading from file: " + filepath);
+        }
+    }
+
+    /**
+     * Builds the schema of a CSV file from its header, and infers the type of
+     * each column from the values of its first rows. A column with no values
+     * among those rows is a string column
+     *
+     * @param filepath   the path to the CSV file relative to the project root
+     *                   directory
+     * @param sampleSize the number of rows to infer types from, or 0 to only
+     *                   read the header
+     * @return - the schema of the file
+     */
+    public static Schema inferSchema(String filepath, int sampleSize) {
+        try (CSVParser parser = open(filepath)) {
+            List<String> names = parser.getHeaderNames();
+            Schema.ColumnType[] types = new Schema.ColumnType[names.size()];
+            Iterator<CSVRecord> records = parser.iterator();
+            for (int row = 0; row < sampleSize && records.hasNext(); row++) {
+                CSVRecord record = records.next();
+                for (int i = 0; i < types.length && i < record.size(); i++) {
+                    if (!record.get(i).isEmpty()) {
+                        types[i] = Schema.widen(types[i], Schema.typeOf(record.get(i)));
+                    }
+                }
+            }
+            List<Schema.ColumnType> columnTypes = new ArrayList<>();
+            for (Schema.ColumnType type : types) {
+                columnTypes.add(type == null ? Schema.ColumnType.STRING : type);
+            }
+            return new Schema(names, columnTypes);
+        } catch (IOException e) {
+            throw new RuntimeException(
+                "IOException when reading from file: " + filepath);
+        }
+    }
+
+    /**
+     * Reads the records of an open CSV file into rows over one schema
+     *
+     * @param parser  the parser over the file, which is read to the end
+     * @param schema  the schema of the rows
+     * @param indices the index in the record of each column of the schema
+     * @param filter  a test on the row, or null to keep every row
+     * @param symbols the symbol table to intern values with
+     * @return - the rows that passed the filter
+     */
+    private static List<Row> read(CSVParser parser, Schema schema, List<Integer> indices,
+                                  Predicate<Row> filter, SymbolTable symbols) {
         List<Row> data = new ArrayList<>();
         for (CSVRecord record : parser) {
-            data.add(new Row(record.toMap()));
+            String[] values = new String[schema.size()];
+            int[] codes = new int[schema.size()];
+            for (int i = 0; i < values.length; i++) {
+                int index = indices.get(i);
+                codes[i] = index < record.size() ? symbols.symbolOf(record.get(index)) : -1;
+                if (codes[i] >= 0) {
+                    values[i] = symbols.stringOf(codes[i]);
+                }
+            }
+            Row row = new Row(schema, values, symbols, codes);
+            if (filter == null || filter.test(row)) {
+                // the filter's reads are not part of any decision, so they must not show in the access order
+                row.clearAccessOrder();
+                data.add(row);
+            }
         }
         return data;
     }
-}
\ No newline at end of file
+
+    /**
+     * Opens a CSV file for streaming through its records one at a time. The
+     * first line of the file is read as the header
+     *
+     * @param filepath the path to the CSV file relative to the project root
+     *                 directory
+     * @return - a parser over the records of the file, which the caller
+     * should close
+     */
+    public static CSVParser open(String filepath) {
+        CSVFormat format = CSVFormat.RFC4180.withDelimiter(DELIMITER).withHeader();
+        try {
+            return new CSVParser(new FileReader(filepath), format);
+        } catch (IOException e) {
+            throw new RuntimeException(
+                "IOException when reading from file: " + filepath);
+        }
+    }
+}
@@ -6,10 +6,23 @@ import org.junit.Before;
 import org.w3c.dom.Attr;
 import src.AttributeSelection;
 import src.DecisionTreeCSVParser;
+import src.ITreeNode;
 import src.Row;
+import src.Schema;
+import src.SymbolTable;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
 
 /**
  * A class containing the tests for methods in the TreeGenerator and Dataset classes
@@ -185,5 +198,812 @@ public class DecisionTreeTest {
         Assert.assertEquals("fruit", this.testGenerator.getDecision(avocado));
     }
 
+    /**
+     * This tests the path statistics by turning them on, making a few decisions, and checking the counts. It
+     * checks the exact hits of every node of a small tree for a known set of lookups, and also checks that the
+     * latency histogram finds the right percentiles and that turning statistics off works
+     */
+    @Test
+    public void testStatistics() {
+        Assert.assertNull(this.testGenerator.getStatistics());
+        this.testGenerator.enableStatistics();
+        Row tangerine = new Row("test row (tangerine)");
+        tangerine.setAttributeValue("color", "orange");
+        tangerine.setAttributeValue("highProtein", "false");
+        tangerine.setAttributeValue("calories", "high");
+        Assert.assertEquals("fruit", this.testGenerator.getDecision(tangerine));
+        Assert.assertEquals("fruit", this.testGenerator.getDecision(tangerine));
+
+        TreeStatistics stats = this.testGenerator.getStatistics();
+        Assert.assertEquals(2, stats.getDecisionCount());
+        long pathCount = 0;
+        for (long count : stats.getDepthHistogram()) {
+            pathCount += count;
+        }
+        Assert.assertEquals(2, pathCount);
+        this.testGenerator.disableStatistics();
+        Assert.assertNull(this.testGenerator.getStatistics());
+
+        DecisionLeaf green = new DecisionLeaf("vegetable");
+        DecisionLeaf high = new DecisionLeaf("fruit");
+        DecisionLeaf low = new DecisionLeaf("vegetable");
+        AttributeNode calories = new AttributeNode("calories", "fruit",
+                List.of(new ValueEdge("high", high), new ValueEdge("low", low)));
+        AttributeNode root = new AttributeNode("color", "vegetable",
+                List.of(new ValueEdge("green", green), new ValueEdge("orange", calories)));
+        TreeStatistics tree = new TreeStatistics(root);
+        String[][] lookups = {{"green", "low"}, {"orange", "high"}, {"orange", "low"}, {"orange", "high"},
+            {"purple", "high"}};
+        for (String[] lookup : lookups) {
+            Row row = new Row("test row (" + lookup[0] + ")");
+            row.setAttributeValue("color", lookup[0]);
+            row.setAttributeValue("calories", lookup[1]);
+            tree.getDecision(root, row);
+        }
+        // the purple row stops at the root with its default, so it only counts there
+        Assert.assertEquals(5, tree.getHits(root));
+        Assert.assertEquals(1, tree.getHits(green));
+        Assert.assertEquals(3, tree.getHits(calories));
+        Assert.assertEquals(2, tree.getHits(high));
+        Assert.assertEquals(1, tree.getHits(low));
+        Assert.assertEquals(0, tree.getHits(new DecisionLeaf("fruit")));
+        Assert.assertArrayEquals(new long[] {1, 1, 3}, tree.getDepthHistogram());
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000);
+        }
+        Assert.assertEquals(50000, histogram.getValueAtPercentile(50), 50000 * 0.04);
+        Assert.assertEquals(100000, histogram.getValueAtPercentile(100), 100000 * 0.04);
+    }
+
+    /**
+     * This tests that parsing through a SymbolTable gives every row the same instance of a value, that the
+     * table hands out stable symbols, and that rows routed by their symbols get the same decisions as rows
+     * routed by their strings
+     */
+    @Test
+    public void testSymbolTable() {
+        SymbolTable symbols = new SymbolTable();
+        List<Row> rows = DecisionTreeCSVParser.parse(this.trainingPath, symbols);
+        Assert.assertSame(rows.get(0).getAttributeValue("color"), rows.get(2).getAttributeValue("color"));
+        Assert.assertSame(symbols.intern(new String("green")), rows.get(0).getAttributeValue("color"));
+
+        int fruit = symbols.symbolOf("fruit");
+        Assert.assertEquals(fruit, symbols.symbolOf(new String("fruit")));
+        Assert.assertEquals("fruit", symbols.stringOf(fruit));
+        Assert.assertEquals(-1, symbols.find("meat"));
+
+        // the unseen values get their symbols before any node builds its table, so they are routed by symbol
+        Schema schema = rows.get(0).getSchema();
+        String[] values = new String[schema.size()];
+        int[] codes = new int[schema.size()];
+        Arrays.fill(codes, -1);
+        Map<String, String> unseen = Map.of("color", "purple", "calories", "none", "highProtein", "maybe");
+        unseen.forEach((attribute, value) -> {
+            codes[schema.ordinalOf(attribute)] = symbols.symbolOf(value);
+            values[schema.ordinalOf(attribute)] = symbols.intern(value);
+        });
+        Row purple = new Row(schema, values, symbols, codes);
+
+        TreeGenerator strict = new TreeGenerator();
+        strict.setUnseenValuePolicy(MissingValuePolicy.FAIL);
+        strict.generateTree(this.training, this.targetAttribute);
+        for (int i = 0; i < rows.size(); i++) {
+            Assert.assertSame(symbols, rows.get(i).getSymbolTable());
+            Assert.assertEquals(this.testGenerator.getDecision(this.dataObjects.get(i)),
+                    strict.getDecision(rows.get(i)));
+        }
+        Assert.assertThrows(RuntimeException.class, () -> strict.getDecision(purple));
+        Assert.assertEquals(this.training.getDefault(this.targetAttribute), this.testGenerator.getDecision(purple));
+        purple.setAttributeValue("color", "purple");
+        Assert.assertNull(purple.getSymbolTable());
+        Assert.assertEquals(this.testGenerator.getDecision(new Row(unseen)), this.testGenerator.getDecision(purple));
+    }
+
+    /**
+     * This tests the off-heap encoded dataset by checking that it answers the same as the normal Dataset and
+     * that a tree trained on it, both in direct buffers and in a mapped file, gives the same decisions
+     */
+    @Test
+    public void testEncodedDataset() throws IOException {
+        EncodedDataset encoded = EncodedDataset.encode(this.attributeList, this.dataObjects,
+                AttributeSelection.ASCENDING_ALPHABETICAL);
+        Assert.assertEquals(this.training.size(), encoded.size());
+        Assert.assertEquals(this.training.getTargetValues("color", true), encoded.getTargetValues("color", true));
+        Assert.assertEquals(this.training.getDefault(this.targetAttribute), encoded.getDefault(this.targetAttribute));
+        Assert.assertEquals(this.training.partition("color").size(), encoded.partition("color").size());
+        Assert.assertTrue(encoded.partition("calories").get(0).sameOutcome(this.targetAttribute));
+        Assert.assertEquals(this.dataObjects.get(3), encoded.getDataObjects().get(3));
+        Row nulled = new Row("test row (nulled)");
+        nulled.setAttributeValue("color", null);
+        nulled.setAttributeValue("calories", "high");
+        ColumnStore withNull = OffHeapColumnStore.encode(List.of("color", "calories"), List.of(nulled));
+        Assert.assertEquals(-1, withNull.code(0, 0));
+        Assert.assertEquals("high", withNull.dictionary(1).stringOf(withNull.code(0, 1)));
+
+        Path file = Files.createTempFile("encoded", ".bin");
+        try {
+            EncodedDataset mapped = new EncodedDataset(OffHeapColumnStore.encode(this.attributeList,
+                    this.dataObjects, file), this.attributeList, AttributeSelection.ASCENDING_ALPHABETICAL);
+            for (AbstractDataset data : List.of(encoded, mapped)) {
+                TreeGenerator generator = new TreeGenerator();
+                generator.generateTree(data, this.targetAttribute);
+                for (Row row : this.dataObjects) {
+                    Assert.assertEquals(this.testGenerator.getDecision(row), generator.getDecision(row));
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * This tests cross-validation. Leave-one-out must match training on every other row and scoring the one
+     * left out, each stratified fold must hold each class within one row of its share, rows missing the target
+     * are left out, and too many folds are rejected
+     */
+    @Test
+    public void testCrossValidation() throws IOException {
+        CrossValidator validator = CrossValidator.fromFile(this.trainingPath, this.targetAttribute,
+                AttributeSelection.ASCENDING_ALPHABETICAL);
+        double expected = 0;
+        for (int i = 0; i < this.dataObjects.size(); i++) {
+            List<Row> others = new ArrayList<>(this.dataObjects);
+            Row heldOut = others.remove(i);
+            TreeGenerator generator = new TreeGenerator();
+            generator.generateTree(new Dataset(this.attributeList, others,
+                    AttributeSelection.ASCENDING_ALPHABETICAL), this.targetAttribute);
+            if (generator.getDecision(heldOut).equals(heldOut.getAttributeValue(this.targetAttribute))) {
+                expected += 1.0 / this.dataObjects.size();
+            }
+        }
+        Assert.assertEquals(expected, CrossValidator.mean(validator.kFold(7, 1, 4)), 1e-9);
+
+        Map<String, Integer> overall = new HashMap<>();
+        for (Row row : this.dataObjects) {
+            overall.merge(row.getAttributeValue(this.targetAttribute), 1, Integer::sum);
+        }
+        for (int k : new int[] {2, 3}) {
+            int[][] folds = validator.stratifiedFolds(k, 1);
+            Assert.assertEquals(this.dataObjects.size(), Arrays.stream(folds).mapToInt(fold -> fold.length).sum());
+            for (int[] fold : folds) {
+                Map<String, Integer> counts = new HashMap<>();
+                for (int row : fold) {
+                    counts.merge(this.dataObjects.get(row).getAttributeValue(this.targetAttribute), 1,
+                            Integer::sum);
+                }
+                for (Map.Entry<String, Integer> entry : overall.entrySet()) {
+                    double share = (double) entry.getValue() / k;
+                    Assert.assertTrue(Math.abs(counts.getOrDefault(entry.getKey(), 0) - share) < 1);
+                }
+            }
+        }
+        Assert.assertEquals(2, validator.stratifiedKFold(2, 1, 2).length);
+        Assert.assertThrows(IllegalArgumentException.class, () -> validator.kFold(8, 1, 4));
+
+        Path file = Files.createTempFile("unlabelled", ".csv");
+        try {
+            Files.writeString(file, Files.readString(Path.of(this.trainingPath)) + "\nyellow,false,low\n");
+            CrossValidator unlabelled = CrossValidator.fromFile(file.toString(), this.targetAttribute,
+                    AttributeSelection.ASCENDING_ALPHABETICAL);
+            Assert.assertEquals(7, Arrays.stream(unlabelled.stratifiedFolds(2, 1)).mapToInt(f -> f.length).sum());
+            Assert.assertEquals(2, unlabelled.stratifiedKFold(2, 1, 2).length);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * This tests the missing and unseen value policies. A row missing an attribute throws by default and falls
+     * back on the default or the majority branch when asked to, and an unseen value goes to the default
+     */
+    @Test
+    public void testMissingValues() {
+        Row sparse = new Row("test row (sparse)");
+        sparse.setAttributeValue("color", "orange");
+        Assert.assertNull(sparse.findAttributeValue("calories"));
+        Assert.assertThrows(RuntimeException.class, () -> this.testGenerator.getDecision(sparse));
+
+        TreeGenerator lenient = new TreeGenerator();
+        lenient.setMissingValuePolicy(MissingValuePolicy.DEFAULT);
+        lenient.generateTree(this.training, this.targetAttribute);
+        Assert.assertEquals(this.training.getDefault(this.targetAttribute), lenient.getDecision(new Row("empty")));
+
+        Assert.assertEquals("vegetable", lenient.getDecision(sparse));
+
+        lenient.setMissingValuePolicy(MissingValuePolicy.MAJORITY_BRANCH);
+        lenient.generateTree(this.training, this.targetAttribute);
+        // calories is missing, so the row follows the high branch, then orange, then highProtein=false first
+        Assert.assertEquals("fruit", lenient.getDecision(sparse));
+
+        Row purple = new Row("test row (purple)");
+        purple.setAttributeValue("calories", "none");
+        purple.setAttributeValue("color", "purple");
+        purple.setAttributeValue("highProtein", "true");
+        Assert.assertEquals(this.training.getDefault(this.targetAttribute), this.testGenerator.getDecision(purple));
+
+        TreeGenerator majority = new TreeGenerator();
+        majority.setUnseenValuePolicy(MissingValuePolicy.MAJORITY_BRANCH);
+        majority.generateTree(this.training, this.targetAttribute);
+        // calories=none goes down the high branch, color=purple down orange, and highProtein=true is seen
+        Assert.assertEquals("vegetable", majority.getDecision(purple));
+        TreeGenerator strict = new TreeGenerator();
+        strict.setUnseenValuePolicy(MissingValuePolicy.FAIL);
+        strict.generateTree(this.training, this.targetAttribute);
+        Assert.assertThrows(RuntimeException.class, () -> strict.getDecision(purple));
+
+        Row nulled = new Row("test row (nulled)");
+        nulled.setAttributeValue("calories", null);
+        Assert.assertNull(nulled.getAttributeValue("calories"));
+        Assert.assertTrue(nulled.getAttributes().contains("calories"));
+        Assert.assertThrows(RuntimeException.class, () -> nulled.getAttributeValue("color"));
+        // a null value routes the same as a missing one
+        Assert.assertEquals("fruit", lenient.getDecision(nulled));
+    }
+
+    /**
+     * This tests that a tree compiled for a store gives the same decisions as the interpreted one, including the
+     * missing and unseen value policies, and that a tree over the node limit falls back on the interpreter
+     */
+    @Test
+    public void testCompiledTree() {
+        List<Row> rows = new ArrayList<>(this.dataObjects);
+        Row sparse = new Row("test row (sparse)");
+        sparse.setAttributeValue("color", "orange");
+        rows.add(sparse);
+        Row purple = new Row("test row (purple)");
+        purple.setAttributeValue("calories", "none");
+        purple.setAttributeValue("color", "purple");
+        purple.setAttributeValue("highProtein", "true");
+        rows.add(purple);
+        ColumnStore store = OffHeapColumnStore.encode(this.attributeList, rows);
+        int sparseRow = rows.size() - 2;
+        int purpleRow = rows.size() - 1;
+
+        CompiledTree compiled = this.testGenerator.compile(store);
+        Assert.assertTrue(compiled.isCompiled());
+        for (int i = 0; i < this.dataObjects.size(); i++) {
+            Assert.assertEquals(this.testGenerator.getDecision(rows.get(i)), compiled.getDecision(i));
+        }
+        Assert.assertThrows(RuntimeException.class, () -> compiled.getDecision(sparseRow));
+        Assert.assertEquals(this.training.getDefault(this.targetAttribute), compiled.getDecision(purpleRow));
+
+        TreeGenerator lenient = new TreeGenerator();
+        lenient.setMissingValuePolicy(MissingValuePolicy.MAJORITY_BRANCH);
+        lenient.generateTree(this.training, this.targetAttribute);
+        Assert.assertEquals("fruit", lenient.compile(store).getDecision(sparseRow));
+        TreeGenerator majority = new TreeGenerator();
+        majority.setUnseenValuePolicy(MissingValuePolicy.MAJORITY_BRANCH);
+        majority.generateTree(this.training, this.targetAttribute);
+        Assert.assertEquals("vegetable", majority.compile(store).getDecision(purpleRow));
+        TreeGenerator strict = new TreeGenerator();
+        strict.setUnseenValuePolicy(MissingValuePolicy.FAIL);
+        strict.generateTree(this.training, this.targetAttribute);
+        Assert.assertThrows(RuntimeException.class, () -> strict.compile(store).getDecision(purpleRow));
+
+        DecisionLeaf leaf = new DecisionLeaf("fruit");
+        AttributeNode node = new AttributeNode("color", "vegetable", List.of(new ValueEdge("orange", leaf)));
+        CompiledTree interpreted = CompiledTree.compile(node, store, 1);
+        Assert.assertFalse(interpreted.isCompiled());
+        Assert.assertEquals(CompiledTree.compile(node, store).getDecision(1), interpreted.getDecision(1));
+    }
+
+    /**
+     * This tests hash-consing by checking that identical leaves and identical subtrees become one instance,
+     * and that a tree generated with shared subtrees still makes the same decisions
+     */
+    @Test
+    public void testShareSubtrees() {
+        TreeCanonicalizer canonicalizer = new TreeCanonicalizer();
+        ITreeNode fruit = canonicalizer.canonicalize(new DecisionLeaf("fruit"));
+        Assert.assertSame(fruit, canonicalizer.canonicalize(new DecisionLeaf("fruit")));
+        ITreeNode first = canonicalizer.canonicalize(new AttributeNode("color", "vegetable",
+                List.of(new ValueEdge("orange", new DecisionLeaf("fruit")))));
+        ITreeNode second = canonicalizer.canonicalize(new AttributeNode("color", "vegetable",
+                List.of(new ValueEdge("orange", new DecisionLeaf("fruit")))));
+        Assert.assertSame(first, second);
+        Assert.assertEquals(2, canonicalizer.getDistinctNodeCount());
+
+        TreeGenerator shared = new TreeGenerator();
+        shared.setShareSubtrees(true);
+        shared.generateTree(this.training, this.targetAttribute);
+        for (Row row : this.dataObjects) {
+            Assert.assertEquals(this.testGenerator.getDecision(row), shared.getDecision(row));
+        }
+    }
+
+    /**
+     * This tests information gain selection, which should split the fruits on calories since that leaves the
+     * least uncertainty about the food type, and checks that sampled selection on a big enough sample agrees
+     */
+    @Test
+    public void testInformationGain() {
+        Dataset gain = new Dataset(this.attributeList, this.dataObjects, AttributeSelection.INFORMATION_GAIN)
+                .cloneWithRemoveFromAttribute(this.targetAttribute);
+        Assert.assertEquals("calories", gain.getAttributeToSplitOn(this.targetAttribute));
+        Assert.assertThrows(IllegalStateException.class, () -> gain.getAttributeToSplitOn());
+        Assert.assertEquals(3, gain.sample(3, new Random(1)).size());
+        Assert.assertSame(gain, gain.sample(7, new Random(1)));
+
+        TreeGenerator sampled = new TreeGenerator();
+        sampled.setSplitSampling(2, 3, 8);
+        sampled.generateTree(gain, this.targetAttribute);
+        // the three rows drawn with this seed favor color, while all seven rows favor calories
+        Assert.assertEquals("color", gain.sample(3, new Random(8)).getAttributeToSplitOn(this.targetAttribute));
+        AttributeNode root = (AttributeNode) sampled.getRoot();
+        Assert.assertEquals("color", root.getAttribute());
+        // the split is chosen from the sample, but every row is still partitioned on it
+        Assert.assertEquals(3, root.getOutgoingEdges().size());
+        Row tangerine = new Row("test row (tangerine)");
+        tangerine.setAttributeValue("color", "orange");
+        tangerine.setAttributeValue("highProtein", "false");
+        tangerine.setAttributeValue("calories", "high");
+        Assert.assertEquals("fruit", sampled.getDecision(tangerine));
+    }
+
+    /**
+     * This tests distributed training by splitting the training data between two worker processes and checking
+     * that the tree they build makes the same decisions as the one built in this JVM, that training that fails
+     * leaves the generator's tree and statistics alone, and that a worker's error is reported with its shard
+     */
+    @Test
+    public void testDistributedTrainer() throws IOException {
+        TreeGenerator distributed = new TreeGenerator();
+        try (DistributedTrainer trainer = new DistributedTrainer(this.trainingPath, 2)) {
+            trainer.train(distributed, this.attributeList, this.targetAttribute,
+                    AttributeSelection.ASCENDING_ALPHABETICAL);
+        }
+        for (Row row : this.dataObjects) {
+            Assert.assertEquals(this.testGenerator.getDecision(row), distributed.getDecision(row));
+        }
+
+        // workers that cannot read their file fail the training, and the generator keeps the tree it had
+        ITreeNode before = distributed.getRoot();
+        distributed.enableStatistics();
+        TreeStatistics statistics = distributed.getStatistics();
+        try (DistributedTrainer trainer = new DistributedTrainer("data/missing.csv", 2)) {
+            Assert.assertThrows(RuntimeException.class, () -> trainer.train(distributed, this.attributeList,
+                    this.targetAttribute, AttributeSelection.ASCENDING_ALPHABETICAL));
+        }
+        Assert.assertSame(before, distributed.getRoot());
+        Assert.assertSame(statistics, distributed.getStatistics());
+
+        // a row missing a value fails its worker's request, which comes back as an error naming the shard
+        Path file = Files.createTempFile("sparse", ".csv");
+        try {
+            Files.writeString(file, "color,size,kind\ngreen,big,fruit\nred\nred,small,vegetable\n");
+            try (DistributedTrainer trainer = new DistributedTrainer(file.toString(), 2)) {
+                RuntimeException failure = Assert.assertThrows(RuntimeException.class, () -> trainer.train(
+                        distributed, List.of("color", "size"), "kind", AttributeSelection.ASCENDING_ALPHABETICAL));
+                Assert.assertTrue(failure.getMessage().startsWith("Shard 1 failed: "));
+            }
+        } finally {
+            Files.delete(file);
+        }
+        Assert.assertSame(before, distributed.getRoot());
+        Assert.assertSame(statistics, distributed.getStatistics());
+    }
+
+    /**
+     * This tests the dataset cache by loading the training data twice, once parsing and writing the cache file
+     * and once mapping it, and checking that both loads train the same tree as the parsed data. A corrupt cache
+     * file, and one that cannot be written, fall back on parsing instead of failing the load
+     */
+    @Test
+    public void testDatasetCache() throws IOException {
+        Path directory = Files.createTempDirectory("cache");
+        try {
+            DatasetCache cache = new DatasetCache(directory);
+            EncodedDataset parsed = cache.load(this.trainingPath, AttributeSelection.ASCENDING_ALPHABETICAL);
+            Assert.assertTrue(Files.exists(cache.cacheFileFor(this.trainingPath)));
+            EncodedDataset mapped = cache.load(this.trainingPath, AttributeSelection.ASCENDING_ALPHABETICAL);
+            Assert.assertEquals(parsed.size(), mapped.size());
+            Assert.assertEquals(parsed.getAttributeList(), mapped.getAttributeList());
+            for (AbstractDataset data : List.of(parsed, mapped)) {
+                TreeGenerator generator = new TreeGenerator();
+                generator.generateTree(data, this.targetAttribute);
+                for (Row row : this.dataObjects) {
+                    Assert.assertEquals(this.testGenerator.getDecision(row), generator.getDecision(row));
+                }
+            }
+
+            Path cacheFile = cache.cacheFileFor(this.trainingPath);
+            for (byte[] corrupt : List.of(new byte[] {0, 0}, new byte[] {0, 0, 0, 8, 1, 2, 3, 4, 5, 6, 7, 8},
+                    new byte[] {0, 0, 0, 100, 1})) {
+                Files.write(cacheFile, corrupt);
+                Assert.assertEquals(parsed.size(), cache.load(this.trainingPath,
+                        AttributeSelection.ASCENDING_ALPHABETICAL).size());
+                Assert.assertTrue(Files.size(cacheFile) > corrupt.length);
+            }
+            DatasetCache unwritable = new DatasetCache(cacheFile.resolve("nested"));
+            Assert.assertEquals(parsed.size(), unwritable.load(this.trainingPath,
+                    AttributeSelection.ASCENDING_ALPHABETICAL).size());
+        } finally {
+            try (var files = Files.list(directory)) {
+                for (Path file : files.toList()) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    /**
+     * This tests parsing with a column projection and a row filter, checking that only the projected columns
+     * are stored, only the matching rows are kept, and that asking for a missing column fails
+     */
+    @Test
+    public void testProjection() {
+        Dataset green = Dataset.fromCsv(this.trainingPath, List.of("color", this.targetAttribute),
+                row -> row.getAttributeValue("color").equals("green"), AttributeSelection.ASCENDING_ALPHABETICAL);
+        Assert.assertEquals(3, green.size());
+        Assert.assertEquals(List.of("color", this.targetAttribute), green.getAttributeList());
+        Assert.assertEquals(Set.of("color", this.targetAttribute), green.getDataObjects().get(0).getAttributes());
+        Assert.assertThrows(RuntimeException.class, () -> DecisionTreeCSVParser.parse(this.trainingPath,
+                List.of("weight"), null));
+    }
+
+    /**
+     * This tests batch scoring, checking that every record is written with the prediction of the tree in its
+     * original order even when small batches are scored by several workers at once
+     */
+    @Test
+    public void testBatchScorer() throws IOException {
+        Path output = Files.createTempFile("scored", ".csv");
+        try {
+            BatchScorer scorer = new BatchScorer(this.testGenerator, 2, 3, 1);
+            Assert.assertEquals(this.dataObjects.size(), scorer.score(this.trainingPath, output.toString(),
+                    "prediction"));
+            List<Row> scored = DecisionTreeCSVParser.parse(output.toString());
+            Assert.assertEquals(this.dataObjects.size(), scored.size());
+            for (int i = 0; i < scored.size(); i++) {
+                Row row = this.dataObjects.get(i);
+                Assert.assertEquals(row.getAttributeValue("color"), scored.get(i).getAttributeValue("color"));
+                Assert.assertEquals(row.getAttributeValue(this.targetAttribute),
+                        scored.get(i).getAttributeValue(this.targetAttribute));
+                Assert.assertEquals(this.testGenerator.getDecision(row),
+                        scored.get(i).getAttributeValue("prediction"));
+            }
+        } finally {
+            Files.deleteIfExists(output);
+        }
+    }
+
+    /**
+     * This tests the prediction cache, checking that repeated rows hit, that rows differing only in attributes
+     * the tree does not read share an entry, and that regenerating the tree starts an empty cache
+     */
+    @Test
+    public void testPredictionCache() {
+        List<String> expected = new ArrayList<>();
+        for (Row row : this.dataObjects) {
+            expected.add(this.testGenerator.getDecision(row));
+        }
+        this.testGenerator.enableCaching(100);
+        PredictionCache cache = this.testGenerator.getPredictionCache();
+        Assert.assertFalse(cache.getKeyAttributes().contains(this.targetAttribute));
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < this.dataObjects.size(); i++) {
+                Assert.assertEquals(expected.get(i), this.testGenerator.getDecision(this.dataObjects.get(i)));
+            }
+        }
+        Assert.assertEquals(cache.size(), cache.getMissCount());
+        Assert.assertEquals(2L * this.dataObjects.size() - cache.size(), cache.getHitCount());
+
+        Row row = this.dataObjects.get(0);
+        Row relabelled = new Row("relabelled");
+        for (String attribute : row.getAttributes()) {
+            relabelled.setAttributeValue(attribute, row.getAttributeValue(attribute));
+        }
+        relabelled.setAttributeValue(this.targetAttribute, "unknown");
+        long hits = cache.getHitCount();
+        this.testGenerator.getDecision(row);
+        this.testGenerator.getDecision(relabelled);
+        Assert.assertEquals(hits + 2, cache.getHitCount());
+
+        this.testGenerator.enableCaching(2);
+        for (Row datum : this.dataObjects) {
+            this.testGenerator.getDecision(datum);
+        }
+        Assert.assertTrue(this.testGenerator.getPredictionCache().size() <= 2);
+
+        this.testGenerator.generateTree(this.training, this.targetAttribute);
+        Assert.assertEquals(0, this.testGenerator.getPredictionCache().size());
+        Assert.assertEquals(2, this.testGenerator.getPredictionCache().getMaxEntries());
+        this.testGenerator.disableCaching();
+        Assert.assertNull(this.testGenerator.getPredictionCache());
+    }
+
+    /**
+     * This tests collapsing duplicate rows, checking that the weights add up to the original rows, that samples
+     * are measured in rows, and that a tree grown from the weighted entries makes the same decisions as one grown
+     * from the rows
+     */
+    @Test
+    public void testWeightedDataset() {
+        List<Row> doubled = new ArrayList<>(this.dataObjects);
+        doubled.addAll(this.dataObjects);
+        Dataset data = new Dataset(this.attributeList, doubled, AttributeSelection.INFORMATION_GAIN);
+        WeightedDataset weighted = WeightedDataset.collapse(data, this.targetAttribute);
+        Assert.assertEquals(data.size(), weighted.size());
+        Assert.assertTrue(weighted.distinctSize() <= this.dataObjects.size());
+        Assert.assertEquals(data.getDefault(this.targetAttribute), weighted.getDefault(this.targetAttribute));
+        Assert.assertEquals(data.getTargetValues(this.targetAttribute, true),
+                weighted.getTargetValues(this.targetAttribute, true));
+        Assert.assertEquals(data.getAttributeToSplitOn(this.targetAttribute),
+                weighted.getAttributeToSplitOn(this.targetAttribute));
+        Assert.assertThrows(IllegalArgumentException.class, () -> weighted.getDefault("color"));
+
+        // a sample draws rows, not entries, and counts each drawn row once
+        Assert.assertSame(weighted, weighted.sample(data.size(), new Random(1)));
+        WeightedDataset sample = weighted.sample(5, new Random(1));
+        Assert.assertEquals(5, sample.size());
+        Assert.assertTrue(sample.distinctSize() <= 5);
+        Assert.assertEquals(sample.distinctSize(), sample.getDataObjects().size());
+
+        TreeGenerator rowGenerator = new TreeGenerator();
+        rowGenerator.generateTree(data, this.targetAttribute);
+        TreeGenerator weightedGenerator = new TreeGenerator();
+        weightedGenerator.generateTree(weighted, this.targetAttribute);
+        for (Row row : this.dataObjects) {
+            Assert.assertEquals(rowGenerator.getDecision(row), weightedGenerator.getDecision(row));
+        }
+    }
 
+    /**
+     * This tests training several targets at once, checking the one-pass class counts, that no tree splits on
+     * another target, and that each tree makes the same decisions as one trained on its own
+     */
+    @Test
+    public void testMultiTargetTrainer() {
+        EncodedDataset encoded = EncodedDataset.encode(this.attributeList, this.dataObjects,
+                AttributeSelection.ASCENDING_ALPHABETICAL);
+        List<String> targets = List.of(this.targetAttribute, "highProtein");
+        MultiTargetTrainer trainer = new MultiTargetTrainer(encoded, targets);
+        Map<String, Map<String, Integer>> counts = trainer.classCounts();
+        for (String target : targets) {
+            Assert.assertEquals(this.dataObjects.size(),
+                    counts.get(target).values().stream().mapToInt(Integer::intValue).sum());
+        }
+
+        Map<String, TreeGenerator> trees = trainer.train(2);
+        Assert.assertEquals(targets, new ArrayList<>(trees.keySet()));
+        for (String target : targets) {
+            List<String> features = new ArrayList<>(this.attributeList);
+            features.removeAll(targets);
+            features.add(target);
+            TreeGenerator single = new TreeGenerator();
+            single.generateTree(new Dataset(features, this.dataObjects, AttributeSelection.ASCENDING_ALPHABETICAL),
+                    target);
+            for (Row row : this.dataObjects) {
+                Assert.assertEquals(single.getDecision(row), trees.get(target).getDecision(row));
+            }
+        }
+        Assert.assertThrows(RuntimeException.class, () -> new MultiTargetTrainer(encoded, List.of("weight")));
+    }
+
+    /**
+     * This tests building a tree out of core, checking that with a budget small enough to make nodes spill the
+     * tree makes the same decisions as one built in memory, and that no runs are left behind
+     */
+    @Test
+    public void testExternalTreeBuilder() throws IOException {
+        Path directory = Files.createTempDirectory("spill");
+        try {
+            for (AttributeSelection selection : List.of(AttributeSelection.ASCENDING_ALPHABETICAL,
+                    AttributeSelection.INFORMATION_GAIN)) {
+                TreeGenerator inMemory = new TreeGenerator();
+                inMemory.generateTree(new Dataset(this.attributeList, this.dataObjects, selection),
+                        this.targetAttribute);
+                TreeGenerator external = new TreeGenerator();
+                new ExternalTreeBuilder(directory, 2).build(external, this.trainingPath, this.attributeList,
+                        this.targetAttribute, selection);
+                for (Row row : this.dataObjects) {
+                    Assert.assertEquals(inMemory.getDecision(row), external.getDecision(row));
+                }
+                try (var files = Files.list(directory)) {
+                    Assert.assertEquals(0, files.count());
+                }
+            }
+        } finally {
+            Files.delete(directory);
+        }
+    }
+
+    /**
+     * This tests lazy building, checking that only the root is built up front, that decisions match the eagerly
+     * built tree, and that many threads reaching the same subtrees get the same answers
+     */
+    @Test
+    public void testLazyTree() {
+        TreeGenerator lazy = new TreeGenerator();
+        lazy.setLazy(true);
+        lazy.setMissingValuePolicy(MissingValuePolicy.DEFAULT);
+        lazy.generateTree(this.training, this.targetAttribute);
+        lazy.setMissingValuePolicy(MissingValuePolicy.FAIL);
+        AttributeNode root = (AttributeNode) lazy.getRoot();
+        for (ValueEdge edge : root.getOutgoingEdges()) {
+            Assert.assertNull(((LazyNode) edge.getChild()).getMaterialized());
+        }
+        List<Integer> indices = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            indices.add(i % this.dataObjects.size());
+        }
+        indices.parallelStream().forEach(i -> Assert.assertEquals(
+                this.testGenerator.getDecision(this.dataObjects.get(i)), lazy.getDecision(this.dataObjects.get(i))));
+        Row first = this.dataObjects.get(0);
+        ValueEdge taken = root.getOutgoingEdges().stream()
+                .filter(edge -> edge.getValue().equals(first.getAttributeValue(root.getAttribute())))
+                .findFirst().orElseThrow();
+        Assert.assertNotNull(((LazyNode) taken.getChild()).getMaterialized());
+        boolean nested = false;
+        for (ValueEdge edge : root.getOutgoingEdges()) {
+            if (((LazyNode) edge.getChild()).getMaterialized() instanceof AttributeNode child) {
+                Assert.assertEquals(MissingValuePolicy.DEFAULT, child.getMissingPolicy());
+                nested = true;
+            }
+        }
+        Assert.assertTrue(nested);
+
+        Assert.assertThrows(IllegalStateException.class, lazy::enableStatistics);
+        lazy.setLazy(false);
+        Assert.assertThrows(IllegalStateException.class, lazy::enableStatistics);
+        Dataset empty = new Dataset(this.attributeList, new ArrayList<>(), AttributeSelection.ASCENDING_ALPHABETICAL);
+        Assert.assertThrows(RuntimeException.class, () -> lazy.generateTree(empty, this.targetAttribute));
+        Assert.assertThrows(IllegalStateException.class, lazy::enableStatistics);
+        lazy.generateTree(this.training, this.targetAttribute);
+        lazy.enableStatistics();
+        Assert.assertThrows(IllegalStateException.class, () -> lazy.setLazy(true));
+    }
+
+    /**
+     * This tests checkpointed building, stopping a build part way through and resuming it from its checkpoint
+     * with a fresh builder and generator, and checking that a checkpoint for another target or for other data of
+     * the same shape is rejected. A build that samples splits must resume with the same sampling settings and
+     * grow the same tree as one that never stopped
+     */
+    @Test
+    public void testCheckpointedTreeBuilder() throws IOException {
+        Path directory = Files.createTempDirectory("checkpoint");
+        Path file = directory.resolve("tree.ckpt");
+        try {
+            for (AttributeSelection selection : List.of(AttributeSelection.ASCENDING_ALPHABETICAL,
+                    AttributeSelection.INFORMATION_GAIN)) {
+                EncodedDataset data = EncodedDataset.encode(this.attributeList, this.dataObjects, selection);
+                TreeGenerator eager = new TreeGenerator();
+                eager.generateTree(data, this.targetAttribute);
+                CheckpointedTreeBuilder builder = new CheckpointedTreeBuilder(file, Duration.ZERO);
+                TreeGenerator stopped = new TreeGenerator();
+                Assert.assertFalse(builder.run(stopped, builder.start(data, this.targetAttribute), 2));
+                Assert.assertTrue(builder.hasCheckpoint());
+                Assert.assertNull(stopped.getRoot());
+                Assert.assertThrows(IllegalStateException.class,
+                        () -> builder.resume(new TreeGenerator(), data, "color"));
+                List<Row> reversed = new ArrayList<>(this.dataObjects);
+                Collections.reverse(reversed);
+                EncodedDataset sameShape = EncodedDataset.encode(this.attributeList, reversed, selection);
+                Assert.assertThrows(IllegalStateException.class,
+                        () -> builder.resume(new TreeGenerator(), sameShape, this.targetAttribute));
+
+                TreeGenerator resumed = new TreeGenerator();
+                new CheckpointedTreeBuilder(file, Duration.ofHours(1)).resume(resumed, data, this.targetAttribute);
+                for (Row row : this.dataObjects) {
+                    Assert.assertEquals(eager.getDecision(row), resumed.getDecision(row));
+                }
+                Assert.assertFalse(builder.hasCheckpoint());
+            }
+
+            // a build that samples must carry on from the same point in the sampling sequence
+            EncodedDataset data = EncodedDataset.encode(this.attributeList, this.dataObjects,
+                    AttributeSelection.INFORMATION_GAIN);
+            TreeGenerator eager = new TreeGenerator();
+            eager.setSplitSampling(2, 2, 8);
+            eager.generateTree(data, this.targetAttribute);
+            CheckpointedTreeBuilder builder = new CheckpointedTreeBuilder(file, Duration.ZERO);
+            TreeGenerator stopped = new TreeGenerator();
+            stopped.setSplitSampling(2, 2, 8);
+            Assert.assertFalse(builder.run(stopped, builder.start(data, this.targetAttribute), 1));
+            Assert.assertThrows(IllegalStateException.class,
+                    () -> builder.resume(new TreeGenerator(), data, this.targetAttribute));
+            TreeGenerator resumed = new TreeGenerator();
+            resumed.setSplitSampling(2, 2, 8);
+            builder.resume(resumed, data, this.targetAttribute);
+            for (Row color : this.dataObjects) {
+                for (Row highProtein : this.dataObjects) {
+                    for (Row calories : this.dataObjects) {
+                        Row probe = new Row("test row (probe)");
+                        probe.setAttributeValue("color", color.getAttributeValue("color"));
+                        probe.setAttributeValue("highProtein", highProtein.getAttributeValue("highProtein"));
+                        probe.setAttributeValue("calories", calories.getAttributeValue("calories"));
+                        Assert.assertEquals(eager.getDecision(probe), resumed.getDecision(probe));
+                    }
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+            Files.delete(directory);
+        }
+    }
+
+    /**
+     * This tests the schema and array-backed rows, checking that parsed rows share one schema and read the same
+     * by ordinal as by name, that types are inferred from the values, and that rows compare by value whatever
+     * their schemas
+     */
+    @Test
+    public void testSchemaRows() {
+        Schema schema = this.dataObjects.get(0).getSchema();
+        Assert.assertTrue(schema.isFixed());
+        Assert.assertEquals(List.of("color", "highProtein", "calories", this.targetAttribute),
+                schema.getColumnNames());
+        int color = schema.ordinalOf("color");
+        for (Row row : this.dataObjects) {
+            Assert.assertSame(schema, row.getSchema());
+            Assert.assertEquals(row.getAttributeValue("color"), row.getAttributeValue(color));
+        }
+        Assert.assertEquals(-1, schema.ordinalOf("name"));
+        Assert.assertNull(this.dataObjects.get(0).findAttributeValue(-1));
+
+        Schema inferred = DecisionTreeCSVParser.inferSchema(this.trainingPath, 100);
+        Assert.assertEquals(Schema.ColumnType.STRING, inferred.getType(inferred.ordinalOf("color")));
+        Assert.assertEquals(Schema.ColumnType.BOOLEAN, inferred.getType(inferred.ordinalOf("highProtein")));
+        Assert.assertEquals(Schema.ColumnType.DECIMAL, Schema.widen(Schema.typeOf("3"), Schema.typeOf("2.5")));
+        Assert.assertEquals(Schema.ColumnType.STRING, Schema.widen(Schema.typeOf("true"), Schema.typeOf("1")));
+        List<Row> typed = DecisionTreeCSVParser.parse(this.trainingPath, inferred);
+        Assert.assertSame(inferred, typed.get(0).getSchema());
+        Assert.assertEquals(this.dataObjects, typed);
+        SymbolTable symbols = new SymbolTable();
+        List<Row> interned = DecisionTreeCSVParser.parse(this.trainingPath, inferred, symbols);
+        Assert.assertSame(symbols.intern(typed.get(0).getAttributeValue("color")),
+                interned.get(0).getAttributeValue("color"));
+        // the header is interned before the values, the same as parsing without a schema
+        SymbolTable byHeader = new SymbolTable();
+        DecisionTreeCSVParser.parse(this.trainingPath, byHeader);
+        for (String column : inferred.getColumnNames()) {
+            Assert.assertEquals(byHeader.find(column), symbols.find(column));
+        }
+
+        Row first = this.dataObjects.get(0);
+        Row built = new Row(Map.of("color", first.getAttributeValue("color"), "highProtein",
+                first.getAttributeValue("highProtein"), "calories", first.getAttributeValue("calories"),
+                this.targetAttribute, first.getAttributeValue(this.targetAttribute)));
+        Assert.assertFalse(built.getSchema().isFixed());
+        Assert.assertEquals(first, built);
+        Assert.assertEquals(this.testGenerator.getDecision(first), this.testGenerator.getDecision(built));
+
+        Row changed = this.dataObjects.get(1);
+        changed.setAttributeValue("name", "extra");
+        Assert.assertNotSame(schema, changed.getSchema());
+        Assert.assertEquals("extra", changed.getAttributeValue("name"));
+        Assert.assertEquals(-1, schema.ordinalOf("name"));
+        Assert.assertFalse(this.dataObjects.get(2).getAttributes().contains("name"));
+    }
+
+    /**
+     * This tests streaming a CSV file into an encoded dataset, checking that it holds the same rows as encoding
+     * the parsed rows, and that it answers the shared dataset methods the same as a Dataset over those rows
+     */
+    @Test
+    public void testEncodedDatasetFromCsv() {
+        EncodedDataset streamed = EncodedDataset.fromCsv(this.trainingPath, null,
+                AttributeSelection.ASCENDING_ALPHABETICAL);
+        Assert.assertEquals(List.of("color", "highProtein", "calories", this.targetAttribute),
+                streamed.getAttributeList());
+        Assert.assertEquals(this.dataObjects, streamed.getDataObjects());
+        TreeGenerator generator = new TreeGenerator();
+        generator.generateTree(streamed, this.targetAttribute);
+        for (Row row : this.dataObjects) {
+            Assert.assertEquals(this.testGenerator.getDecision(row), generator.getDecision(row));
+        }
+        Assert.assertEquals(List.of("color"), EncodedDataset.fromCsv(this.trainingPath, List.of("color"),
+                AttributeSelection.ASCENDING_ALPHABETICAL).getStore().getColumnNames());
+        for (AbstractDataset data : List.of(streamed, new Dataset(streamed.getAttributeList(), this.dataObjects,
+                AttributeSelection.ASCENDING_ALPHABETICAL))) {
+            Assert.assertEquals(this.dataObjects.size(), data.size());
+            Assert.assertEquals("calories", data.getAttributeToSplitOn());
+            Assert.assertEquals(this.training.getDefault(this.targetAttribute), data.getDefault(this.targetAttribute));
+            Assert.assertEquals(3, data.cloneWithRemoveFromAttribute("color").getAttributeList().size());
+        }
+    }
 }
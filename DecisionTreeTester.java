@@ -52,6 +52,8 @@ public class DecisionTreeTester<G extends ITreeGenerator<D>, D extends IDataset>
     private Class<G> generatorClass;
     private Class<D> datasetClass;
     private ITreeGenerator<D> generator;
+    // shared by the files this tester parses so training and testing rows use the same string instances
+    private final SymbolTable symbols = new SymbolTable();
 
     /**
      * A constructor for the decision tree tester
@@ -85,8 +87,8 @@ public class DecisionTreeTester<G extends ITreeGenerator<D>, D extends IDataset>
             throws InvocationTargetException, NoSuchMethodException,
             InstantiationException, IllegalAccessException {
 
-        D trainingData = makeDataset(trainingDataPath, this.datasetClass);
-        D testingData = makeDataset(testingDataPath, this.datasetClass);
+        D trainingData = makeDataset(trainingDataPath, this.datasetClass, this.symbols);
+        D testingData = makeDataset(testingDataPath, this.datasetClass, this.symbols);
         return this.getAverageDecisionTreeAccuracy(trainingData, testingData, targetAttribute,
                 numIterations);
     }
@@ -165,7 +167,26 @@ public class DecisionTreeTester<G extends ITreeGenerator<D>, D extends IDataset>
     public static <D extends IDataset> D makeDataset(String dataPath, Class<D> datasetClass)
             throws NoSuchMethodException,
             IllegalAccessException, InvocationTargetException, InstantiationException {
-        List<Row> dataList = DecisionTreeCSVParser.parse(dataPath);
+        return makeDataset(dataPath, datasetClass, new SymbolTable());
+    }
+
+    /**
+     * Generates a dataset object given a filepath and dataset class, interning its names and values through a
+     * symbol table so that datasets parsed with the same table share string instances
+     * @param dataPath filepath to the CSV file
+     * @param datasetClass class for a Dataset object
+     * @param symbols the symbol table to intern names and values with
+     * @param <D>
+     * @return - the new dataset object
+     * @throws NoSuchMethodException
+     * @throws IllegalAccessException
+     * @throws InvocationTargetException
+     * @throws InstantiationException
+     */
+    public static <D extends IDataset> D makeDataset(String dataPath, Class<D> datasetClass, SymbolTable symbols)
+            throws NoSuchMethodException,
+            IllegalAccessException, InvocationTargetException, InstantiationException {
+        List<Row> dataList = DecisionTreeCSVParser.parse(dataPath, symbols);
 
         Constructor<D> constructor = datasetClass.getConstructor(List.class, List.class, AttributeSelection.class);
         constructor.setAccessible(true);
@@ -173,11 +194,18 @@ public class DecisionTreeTester<G extends ITreeGenerator<D>, D extends IDataset>
     }
 
     /**
-     * Produces a list of attributes present in a given dataset
+     * Produces a list of attributes present in a given dataset. Rows parsed from one file share its schema, so
+     * the attributes come from the schema without looking at every row
      * @param data a list of rows where one row represents one data object
      * @return - arraylist of attributes
      */
     private static List<String> getAttributesFromData(List<Row> data) {
+        if (!data.isEmpty() && data.get(0).getSchema().isFixed()) {
+            Schema schema = data.get(0).getSchema();
+            if (data.stream().allMatch(datum -> datum.getSchema() == schema)) {
+                return new ArrayList<>(schema.getColumnNames());
+            }
+        }
         Set<String> attributeSet = new HashSet<>();
         for (Row datum : data) {
             attributeSet.addAll(datum.getAttributes());
@@ -0,0 +1,253 @@
+package sol;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import src.AttributeSelection;
+import src.ITreeNode;
+
+/**
+ * A coordinator for data-parallel training across several local JVMs. It starts one ShardWorker process per
+ * shard, talking to each over its standard input and output, and drives the same recursion as
+ * TreeGenerator.generateTreeHelper: at every node it asks all workers for their counts at once, merges them,
+ * and decides the default, whether to make a leaf, which attribute to split on and which children to build.
+ * The rows only ever live in the workers, so the coordinator's memory does not grow with the data.
+ */
+public class DistributedTrainer implements AutoCloseable {
+    private final List<Process> workers;
+    private final List<DataOutputStream> requests;
+    private final List<DataInputStream> replies;
+    private final Random random;
+
+    /**
+     * Constructor for a DistributedTrainer, which starts the worker processes. The workers run with the same
+     * Java installation and classpath as this JVM, and each streams the file and keeps only its own shard
+     * @param csvPath the path to the CSV file of training data
+     * @param numWorkers the number of worker processes
+     */
+    public DistributedTrainer(String csvPath, int numWorkers) {
+        if (numWorkers < 1) {
+            throw new IllegalArgumentException("Need at least one worker: " + numWorkers);
+        }
+        this.workers = new ArrayList<>();
+        this.requests = new ArrayList<>();
+        this.replies = new ArrayList<>();
+        this.random = new Random();
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        try {
+            for (int i = 0; i < numWorkers; i++) {
+                Process worker = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                        ShardWorker.class.getName(), csvPath, Integer.toString(i), Integer.toString(numWorkers))
+                        .redirectError(ProcessBuilder.Redirect.INHERIT)
+                        .start();
+                this.workers.add(worker);
+                this.requests.add(new DataOutputStream(new BufferedOutputStream(worker.getOutputStream())));
+                this.replies.add(new DataInputStream(new BufferedInputStream(worker.getInputStream())));
+            }
+        } catch (IOException e) {
+            this.close();
+            throw new UncheckedIOException("IOException when starting workers", e);
+        }
+    }
+
+    /**
+     * Trains a tree across the workers and installs it in a generator. The generator's missing and unseen
+     * value policies and subtree sharing apply to the tree, the same as for generateTree. If training fails the
+     * generator keeps its previous tree, statistics and prediction cache untouched
+     * @param generator the generator to install the tree in
+     * @param attributeList the attributes to split on, which may include the target
+     * @param targetAttribute the attribute to predict
+     * @param attributeSelection the way to select attributes
+     */
+    public void train(TreeGenerator generator, List<String> attributeList, String targetAttribute,
+                      AttributeSelection attributeSelection) {
+        List<String> attributes = new ArrayList<>(attributeList);
+        attributes.remove(targetAttribute);
+        generator.startBuild();
+        boolean finished = false;
+        try {
+            generator.finishBuild(this.buildNode(generator, new LinkedHashMap<>(), attributes, targetAttribute,
+                    attributeSelection));
+            finished = true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("IOException when talking to workers", e);
+        } finally {
+            if (!finished) {
+                generator.abortBuild();
+            }
+        }
+    }
+
+    /**
+     * Builds the node at the end of a path from the merged counts of every worker
+     * @param generator the generator making the nodes
+     * @param path the attribute values on the path to this node
+     * @param attributes the attributes left to split on
+     * @param targetAttribute the attribute to predict
+     * @param attributeSelection the way to select attributes
+     * @return the new node
+     * @throws IOException if talking to a worker fails
+     */
+    private ITreeNode buildNode(TreeGenerator generator, Map<String, String> path, List<String> attributes,
+                                String targetAttribute, AttributeSelection attributeSelection) throws IOException {
+        Map<String, Integer> classCounts = new LinkedHashMap<>();
+        List<Map<String, Map<String, Integer>>> valueCounts = this.requestStats(path, targetAttribute, attributes,
+                classCounts);
+        String defaultValue = Dataset.majority(classCounts);
+        if (defaultValue == null) {
+            throw new IndexOutOfBoundsException("Dataset is Empty");
+        }
+        if (classCounts.size() == 1 || attributes.isEmpty()) {
+            return generator.makeLeaf(defaultValue);
+        }
+        int chosen = this.selectAttribute(attributes, valueCounts, attributeSelection);
+        String attribute = attributes.get(chosen);
+        List<String> remaining = new ArrayList<>(attributes);
+        remaining.remove(attribute);
+        List<ValueEdge> edgeList = new ArrayList<>();
+        ITreeNode majorityChild = null;
+        int majoritySize = 0;
+        for (Map.Entry<String, Map<String, Integer>> entry : valueCounts.get(chosen).entrySet()) {
+            Map<String, String> childPath = new LinkedHashMap<>(path);
+            childPath.put(attribute, entry.getKey());
+            ITreeNode child = this.buildNode(generator, childPath, remaining, targetAttribute, attributeSelection);
+            edgeList.add(new ValueEdge(entry.getKey(), child));
+            int size = entry.getValue().values().stream().mapToInt(Integer::intValue).sum();
+            if (size > majoritySize) {
+                majorityChild = child;
+                majoritySize = size;
+            }
+        }
+        return generator.makeNode(attribute, defaultValue, edgeList, majorityChild);
+    }
+
+    /**
+     * Sends a stats request to every worker before reading any reply, so the workers count in parallel, then
+     * merges the replies. A worker that could not answer has its error rethrown with its shard, after the other
+     * replies have been read so that every worker stays in step for the next request
+     * @param path the attribute values on the path to the node
+     * @param targetAttribute the attribute to predict
+     * @param attributes the attributes left to split on
+     * @param classCounts the map to merge the counts of the target values into
+     * @return the merged (value, target value) counts of each attribute, in the order of attributes
+     * @throws IOException if talking to a worker fails
+     */
+    private List<Map<String, Map<String, Integer>>> requestStats(Map<String, String> path, String targetAttribute,
+                                                                 List<String> attributes,
+                                                                 Map<String, Integer> classCounts)
+            throws IOException {
+        for (DataOutputStream out : this.requests) {
+            out.writeByte(ShardWorker.STATS);
+            out.writeInt(path.size());
+            for (Map.Entry<String, String> condition : path.entrySet()) {
+                out.writeUTF(condition.getKey());
+                out.writeUTF(condition.getValue());
+            }
+            out.writeUTF(targetAttribute);
+            out.writeInt(attributes.size());
+            for (String attribute : attributes) {
+                out.writeUTF(attribute);
+            }
+            out.flush();
+        }
+        List<Map<String, Map<String, Integer>>> valueCounts = new ArrayList<>();
+        for (int i = 0; i < attributes.size(); i++) {
+            valueCounts.add(new LinkedHashMap<>());
+        }
+        RuntimeException failure = null;
+        for (int shard = 0; shard < this.replies.size(); shard++) {
+            DataInputStream in = this.replies.get(shard);
+            if (in.readByte() == ShardWorker.ERROR) {
+                String message = in.readUTF();
+                if (failure == null) {
+                    failure = new RuntimeException("Shard " + shard + " failed: " + message);
+                }
+                continue;
+            }
+            ShardWorker.readCounts(in, classCounts);
+            for (Map<String, Map<String, Integer>> counts : valueCounts) {
+                int numValues = in.readInt();
+                for (int v = 0; v < numValues; v++) {
+                    ShardWorker.readCounts(in, counts.computeIfAbsent(in.readUTF(), k -> new LinkedHashMap<>()));
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return valueCounts;
+    }
+
+    /**
+     * Picks the attribute to split on the same way Dataset does, using the merged counts for information gain
+     * @param attributes the attributes left to split on
+     * @param valueCounts the merged (value, target value) counts of each attribute
+     * @param attributeSelection the way to select attributes
+     * @return the index of the chosen attribute in attributes
+     */
+    private int selectAttribute(List<String> attributes, List<Map<String, Map<String, Integer>>> valueCounts,
+                                AttributeSelection attributeSelection) {
+        List<String> sorted = attributes.stream().sorted().toList();
+        switch (attributeSelection) {
+            case ASCENDING_ALPHABETICAL -> {
+                return attributes.indexOf(sorted.get(0));
+            }
+            case DESCENDING_ALPHABETICAL -> {
+                return attributes.indexOf(sorted.get(sorted.size() - 1));
+            }
+            case RANDOM -> {
+                return attributes.indexOf(sorted.get(this.random.nextInt(sorted.size())));
+            }
+            case INFORMATION_GAIN -> {
+                int best = -1;
+                double bestEntropy = Double.POSITIVE_INFINITY;
+                for (String attribute : sorted) {
+                    int index = attributes.indexOf(attribute);
+                    double entropy = Dataset.splitEntropy(valueCounts.get(index).values());
+                    if (entropy < bestEntropy) {
+                        best = index;
+                        bestEntropy = entropy;
+                    }
+                }
+                return best;
+            }
+        }
+        throw new RuntimeException("Non-Exhaustive Switch Case");
+    }
+
+    /**
+     * Shuts down the worker processes, killing any that do not exit in time
+     */
+    @Override
+    public void close() {
+        for (int i = 0; i < this.workers.size(); i++) {
+            try {
+                this.requests.get(i).writeByte(ShardWorker.SHUTDOWN);
+                this.requests.get(i).close();
+            } catch (IOException e) {
+                // the worker is already gone
+            }
+        }
+        for (Process worker : this.workers) {
+            try {
+                if (!worker.waitFor(5, TimeUnit.SECONDS)) {
+                    worker.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                worker.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
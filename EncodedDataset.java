@@ -0,0 +1,387 @@
+package sol;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import src.AttributeSelection;
+import src.Row;
+
+/**
+ * A dataset whose rows live in a ColumnStore instead of a list of Row objects. The dataset itself is only a
+ * list of row indices into the store, so partitioning and cloning never copy the data, and the store decides
+ * where the data is kept. Rows are decoded one at a time only when a caller asks for them.
+ */
+public class EncodedDataset extends AbstractDataset {
+    private final ColumnStore store;
+    private final int[] rowIndices;
+    private ClassCodes classCodes;
+
+    /**
+     * Constructor for an EncodedDataset over every row of a store
+     * @param store the store holding the rows
+     * @param attributeList - a list of attributes
+     * @param attributeSelection - an enum for which way to select attributes
+     */
+    public EncodedDataset(ColumnStore store, List<String> attributeList, AttributeSelection attributeSelection) {
+        this(store, allRows(store.rowCount()), attributeList, attributeSelection);
+    }
+
+    /**
+     * Constructor for an EncodedDataset over some of the rows of a store
+     * @param store the store holding the rows
+     * @param rowIndices the indices of the rows in this dataset, which are not copied
+     * @param attributeList - a list of attributes
+     * @param attributeSelection - an enum for which way to select attributes
+     */
+    EncodedDataset(ColumnStore store, int[] rowIndices, List<String> attributeList,
+                   AttributeSelection attributeSelection) {
+        super(attributeList, attributeSelection);
+        this.store = store;
+        this.rowIndices = rowIndices;
+    }
+
+    /**
+     * Encodes rows into a new off-heap store and makes a dataset over all of them
+     * @param attributeList - a list of attributes, which are also the columns that get stored
+     * @param dataObjects - a list of rows
+     * @param attributeSelection - an enum for which way to select attributes
+     * @return the new dataset
+     */
+    public static EncodedDataset encode(List<String> attributeList, List<Row> dataObjects,
+                                        AttributeSelection attributeSelection) {
+        return new EncodedDataset(OffHeapColumnStore.encode(attributeList, dataObjects), attributeList,
+                attributeSelection);
+    }
+
+    /**
+     * Streams a CSV file into a new off-heap store and makes a dataset over all of its rows, without ever holding
+     * the rows on the heap
+     * @param csvPath the path to the CSV file
+     * @param columns the columns to read, which become the attribute list, or null to read every column
+     * @param attributeSelection - an enum for which way to select attributes
+     * @return the new dataset
+     */
+    public static EncodedDataset fromCsv(String csvPath, List<String> columns, AttributeSelection attributeSelection) {
+        ColumnStore store = OffHeapColumnStore.fromCsv(csvPath, columns);
+        return new EncodedDataset(store, store.getColumnNames(), attributeSelection);
+    }
+
+    /**
+     * Gets the store this dataset reads from
+     * @return the column store
+     */
+    public ColumnStore getStore() {
+        return this.store;
+    }
+
+    /**
+     * Gets the indices of the rows of this dataset in the store
+     * @return the row indices, which must not be modified
+     */
+    int[] getRowIndices() {
+        return this.rowIndices;
+    }
+
+    /**
+     * Method to get the data objects. The rows are decoded from the store when they are read, so each call to
+     * get returns a new Row
+     * @return a read-only list view of the rows
+     */
+    @Override
+    public List<Row> getDataObjects() {
+        return new AbstractList<Row>() {
+            @Override
+            public Row get(int index) {
+                return EncodedDataset.this.store.decode(EncodedDataset.this.rowIndices[index]);
+            }
+
+            @Override
+            public int size() {
+                return EncodedDataset.this.rowIndices.length;
+            }
+        };
+    }
+
+    /**
+     * Returns the size of the data set based on the amount of rows
+     * @return the size of the data set
+     */
+    @Override
+    public int size() {
+        return this.rowIndices.length;
+    }
+
+    /**
+     * Gets the values of an attribute by decoding its codes, in row order. Distinct values are listed in the
+     * order they first appear
+     * @param targetAttribute attribute which you want the values of
+     * @param distinct whether you want to list to have repeat values
+     * @return the list of values of the attribute (distinct or not)
+     */
+    @Override
+    public ArrayList<String> getTargetValues(String targetAttribute, Boolean distinct) {
+        int column = this.columnOf(targetAttribute);
+        ArrayList<String> values = new ArrayList<>();
+        boolean[] seen = new boolean[this.store.dictionary(column).size()];
+        for (int row : this.rowIndices) {
+            int code = this.codeAt(row, column, targetAttribute);
+            if (!distinct) {
+                values.add(this.store.dictionary(column).stringOf(code));
+            } else if (!seen[code]) {
+                seen[code] = true;
+                values.add(this.store.dictionary(column).stringOf(code));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Clones the dataset with an attribute removed from the attribute list. The row indices are shared
+     * @param attributeToRemove the attribute to remove from the attribute list
+     * @return the new dataset with the target attribute removed
+     */
+    @Override
+    public EncodedDataset cloneWithRemoveFromAttribute(String attributeToRemove) {
+        ArrayList<String> newAttributeList = new ArrayList<>(this.getAttributeList());
+        newAttributeList.remove(attributeToRemove);
+        return new EncodedDataset(this.store, this.rowIndices, newAttributeList, this.getSelectionType());
+    }
+
+    /**
+     * Splits the dataset by the codes of an attribute with a counting sort, reading the column once. The
+     * partitions are in the order their values first appear
+     * @param attributeToSplitOn the attribute by which we want to split the datasets on
+     * @return a list of datasets, one for each distinct value of the attribute
+     */
+    @Override
+    public List<EncodedDataset> partition(String attributeToSplitOn) {
+        int column = this.columnOf(attributeToSplitOn);
+        int[][] groups = CodeKernels.groupByCode(this.rowIndices, this.gatherCodes(column, attributeToSplitOn),
+                this.store.dictionary(column).size());
+        ArrayList<String> newAttributeList = new ArrayList<>(this.getAttributeList());
+        newAttributeList.remove(attributeToSplitOn);
+        List<EncodedDataset> partitions = new ArrayList<>();
+        for (int[] group : groups) {
+            partitions.add(new EncodedDataset(this.store, group, newAttributeList, this.getSelectionType()));
+        }
+        return partitions;
+    }
+
+    /**
+     * Counts (value, target value) pairs over codes into a flat table, only decoding the pairs that occur. The
+     * target codes are gathered once and shared by the counts of every attribute
+     * @param attribute the attribute to group the rows by
+     * @param targetAttribute the attribute to count the values of within each group
+     * @return a map from each value of the attribute to the counts of the target values in its rows
+     */
+    @Override
+    protected Map<String, Map<String, Integer>> countByValue(String attribute, String targetAttribute) {
+        int column = this.columnOf(attribute);
+        int targetColumn = this.columnOf(targetAttribute);
+        int numClasses = this.store.dictionary(targetColumn).size();
+        int[] table = CodeKernels.countPairs(this.store, column, this.rowIndices, this.classCodes(targetAttribute),
+                this.store.dictionary(column).size(), numClasses);
+        if (table == null) {
+            // the kernel only tells that some row has no value, so find the first one to name it
+            for (int row : this.rowIndices) {
+                if (this.store.code(row, column) < 0) {
+                    throw missingAttribute(attribute, row);
+                }
+            }
+            throw new IllegalStateException("Counting '" + attribute + "' found a missing value but no row has one");
+        }
+        Map<String, Map<String, Integer>> counts = new LinkedHashMap<>();
+        for (int cell = 0; cell < table.length; cell++) {
+            if (table[cell] > 0) {
+                counts.computeIfAbsent(this.store.dictionary(column).stringOf(cell / numClasses),
+                        v -> new LinkedHashMap<>())
+                        .put(this.store.dictionary(targetColumn).stringOf(cell % numClasses), table[cell]);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Draws a uniform random sample of the row indices with reservoir sampling. The sample shares the store
+     * @param sampleSize the number of rows to draw
+     * @param random the source of randomness
+     * @return a dataset over the sampled rows
+     */
+    @Override
+    public EncodedDataset sample(int sampleSize, Random random) {
+        if (this.size() <= sampleSize) {
+            return this;
+        }
+        int[] reservoir = new int[sampleSize];
+        System.arraycopy(this.rowIndices, 0, reservoir, 0, sampleSize);
+        for (int i = sampleSize; i < this.rowIndices.length; i++) {
+            int j = random.nextInt(i + 1);
+            if (j < sampleSize) {
+                reservoir[j] = this.rowIndices[i];
+            }
+        }
+        return new EncodedDataset(this.store, reservoir, this.getAttributeList(), this.getSelectionType());
+    }
+
+    /**
+     * Finds the most common value of the target attribute by counting codes. Ties go to the value that comes
+     * first alphabetically, the same as mostFrequent
+     * @param targetAttribute the attribute which we are trying to find the most common of
+     * @return attribute which is the most common
+     */
+    @Override
+    public String getDefault(String targetAttribute) {
+        if (this.size() == 0) {
+            throw new IndexOutOfBoundsException("Dataset is Empty");
+        }
+        int column = this.columnOf(targetAttribute);
+        int[] counts = CodeKernels.count(this.classCodes(targetAttribute), this.store.dictionary(column).size());
+        return this.mostFrequentCode(column, counts);
+    }
+
+    /**
+     * Checks whether every row has the same code for the target attribute, stopping at the first difference
+     * @param targetAttribute the attribute for which to check if all are the same
+     * @return true if the dataset has exactly one value for the attribute
+     */
+    @Override
+    public boolean sameOutcome(String targetAttribute) {
+        if (this.size() == 0) {
+            return false;
+        }
+        int[] codes = this.classCodes(targetAttribute);
+        for (int code : codes) {
+            if (code != codes[0]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Picks the value with the highest count, breaking ties alphabetically
+     * @param column the index of the column the counts are for
+     * @param counts the number of rows for each code
+     * @return the value with the highest count
+     */
+    String mostFrequentCode(int column, int[] counts) {
+        String best = null;
+        int bestCount = 0;
+        for (int code = 0; code < counts.length; code++) {
+            String value = this.store.dictionary(column).stringOf(code);
+            if (counts[code] > bestCount || (counts[code] == bestCount && counts[code] > 0
+                    && value.compareTo(best) < 0)) {
+                best = value;
+                bestCount = counts[code];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Finds the column of an attribute in the store
+     * @param attribute the attribute name
+     * @return the column index
+     */
+    int columnOf(String attribute) {
+        int column = this.store.columnIndex(attribute);
+        if (column < 0) {
+            throw new RuntimeException("Attribute '" + attribute + "' is not stored in this dataset");
+        }
+        return column;
+    }
+
+    /**
+     * Gets the codes of the target attribute for every row, gathering them the first time they are needed. A
+     * node asks for the same target for its default, its outcome check and every attribute it weighs, so the
+     * target column is only read once per node
+     * @param targetAttribute the attribute being predicted
+     * @return the code of each row, in row order
+     */
+    private int[] classCodes(String targetAttribute) {
+        ClassCodes cached = this.classCodes;
+        if (cached == null || !cached.targetAttribute.equals(targetAttribute)) {
+            cached = new ClassCodes(targetAttribute, this.gatherCodes(this.columnOf(targetAttribute),
+                    targetAttribute));
+            this.classCodes = cached;
+        }
+        return cached.codes;
+    }
+
+    /**
+     * Gathers the codes of a column for every row of this dataset, failing the same way Row does if any row has
+     * no value for the attribute
+     * @param column the index of the column
+     * @param attribute the attribute name, used in the error message
+     * @return the code of each row, in row order
+     */
+    private int[] gatherCodes(int column, String attribute) {
+        int[] codes = CodeKernels.gather(this.store, column, this.rowIndices);
+        int missing = CodeKernels.firstMissing(codes);
+        if (missing >= 0) {
+            throw missingAttribute(attribute, this.rowIndices[missing]);
+        }
+        return codes;
+    }
+
+    /**
+     * Reads the code of a cell, failing the same way Row does when the row has no value for the attribute
+     * @param row the index of the row in the store
+     * @param column the index of the column
+     * @param attribute the attribute name, used in the error message
+     * @return the code of the cell
+     */
+    private int codeAt(int row, int column, String attribute) {
+        int code = this.store.code(row, column);
+        if (code < 0) {
+            throw missingAttribute(attribute, row);
+        }
+        return code;
+    }
+
+    /**
+     * Makes the exception for a row that has no value for an attribute, the same as Row throws
+     * @param attribute the attribute name
+     * @param row the index of the row in the store
+     * @return the exception to throw
+     */
+    private static RuntimeException missingAttribute(String attribute, int row) {
+        return new RuntimeException("Attribute '" + attribute + "' did not exist in row " + row);
+    }
+
+    /**
+     * Makes the indices 0 to size - 1
+     * @param size the number of rows
+     * @return an array of every row index
+     */
+    private static int[] allRows(int size) {
+        int[] rows = new int[size];
+        for (int i = 0; i < size; i++) {
+            rows[i] = i;
+        }
+        return rows;
+    }
+
+    /**
+     * The gathered codes of a target attribute. Both are kept in one object so that a thread never sees the codes
+     * of one target paired with the name of another
+     */
+    private static class ClassCodes {
+        private final String targetAttribute;
+        private final int[] codes;
+
+        /**
+         * Constructor for ClassCodes
+         * @param targetAttribute the attribute the codes are of
+         * @param codes the code of each row
+         */
+        ClassCodes(String targetAttribute, int[] codes) {
+            this.targetAttribute = targetAttribute;
+            this.codes = codes;
+        }
+    }
+}
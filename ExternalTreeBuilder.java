@@ -0,0 +1,480 @@
+package sol;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import src.AttributeSelection;
+import src.DecisionTreeCSVParser;
+import src.ITreeNode;
+import src.SymbolTable;
+
+/**
+ * A class that builds trees from data that does not fit in memory. The CSV file is streamed once into a run, a
+ * temporary file of encoded rows, and only the column dictionaries stay on the heap. A node whose run has more
+ * rows than the memory budget is built by streaming its run twice, once to count the target values (and the
+ * value counts of every attribute for INFORMATION_GAIN) and once to write each row to the run of its child, and
+ * the children are built afterwards from their own runs. A node whose run fits in the budget is loaded into an
+ * OffHeapColumnStore and built in memory by TreeGenerator.generateTreeHelper. Either way the tree is the same
+ * one generateTree would build from the whole file, except with split sampling, which only nodes built in memory
+ * use. Runs count their rows in longs, so a file can have more rows than an int holds as long as the nodes that
+ * are loaded fit in the budget.
+ *
+ * A run holds its rows one after another, each as the four-byte codes of the run's columns. Each split drops the
+ * column it split on, so runs get narrower as they get deeper.
+ */
+public class ExternalTreeBuilder {
+    private static final String SUFFIX = ".run";
+
+    private final Path spillDirectory;
+    private final int memoryBudget;
+    private final Set<Path> liveRuns;
+
+    /**
+     * Constructor for an ExternalTreeBuilder
+     * @param spillDirectory the directory to write runs to
+     * @param memoryBudget the most rows a node may have and still be built in memory, which can be at most the
+     *                     Integer.MAX_VALUE / 4 rows an OffHeapColumnStore column holds
+     */
+    public ExternalTreeBuilder(Path spillDirectory, int memoryBudget) {
+        if (memoryBudget < 1 || memoryBudget > Integer.MAX_VALUE / Integer.BYTES) {
+            throw new IllegalArgumentException("Memory budget must be between 1 and "
+                    + Integer.MAX_VALUE / Integer.BYTES + " rows: " + memoryBudget);
+        }
+        this.spillDirectory = spillDirectory;
+        this.memoryBudget = memoryBudget;
+        this.liveRuns = new HashSet<>();
+    }
+
+    /**
+     * Builds a tree from a CSV file and installs it in a generator. The generator's policies and subtree sharing
+     * apply the same as for generateTree. Its split sampling only applies to nodes small enough to be built in
+     * memory; nodes over the memory budget are split from the counts of all their rows
+     * @param generator the generator to install the tree in
+     * @param csvPath the path to the CSV file
+     * @param attributeList the columns to train on, including the target
+     * @param targetAttribute the attribute to predict
+     * @param attributeSelection the way to select attributes
+     */
+    public void build(TreeGenerator generator, String csvPath, List<String> attributeList, String targetAttribute,
+                      AttributeSelection attributeSelection) {
+        List<String> columnNames = new ArrayList<>(attributeList);
+        if (!columnNames.contains(targetAttribute)) {
+            columnNames.add(targetAttribute);
+        }
+        SymbolTable[] dictionaries = new SymbolTable[columnNames.size()];
+        for (int column = 0; column < dictionaries.length; column++) {
+            dictionaries[column] = new SymbolTable();
+        }
+        List<String> attributes = new ArrayList<>(columnNames);
+        attributes.remove(targetAttribute);
+        Build build = new Build(generator, columnNames, dictionaries, columnNames.indexOf(targetAttribute),
+                attributeSelection);
+        try {
+            Files.createDirectories(this.spillDirectory);
+            Run root = this.spill(csvPath, columnNames, dictionaries);
+            generator.startBuild();
+            generator.finishBuild(this.buildNode(build, root, attributes));
+        } catch (IOException e) {
+            throw new UncheckedIOException("IOException when spilling: " + csvPath, e);
+        } finally {
+            for (Path run : this.liveRuns) {
+                try {
+                    Files.deleteIfExists(run);
+                } catch (IOException e) {
+                    // the file is only temporary
+                }
+            }
+            this.liveRuns.clear();
+        }
+    }
+
+    /**
+     * Streams a CSV file into the first run, encoding each value with its column's dictionary
+     * @param csvPath the path to the CSV file
+     * @param columnNames the columns to keep
+     * @param dictionaries the dictionary of each column, which is filled in
+     * @return the run of every row
+     * @throws IOException if writing the run fails
+     */
+    private Run spill(String csvPath, List<String> columnNames, SymbolTable[] dictionaries) throws IOException {
+        int[] columns = new int[columnNames.size()];
+        Run run = this.newRun(allColumns(columns.length));
+        try (CSVParser parser = DecisionTreeCSVParser.open(csvPath);
+             DataOutputStream out = run.writer()) {
+            List<String> headerNames = parser.getHeaderNames();
+            for (int column = 0; column < columns.length; column++) {
+                columns[column] = headerNames.indexOf(columnNames.get(column));
+                if (columns[column] < 0) {
+                    throw new RuntimeException("Column '" + columnNames.get(column)
+                            + "' did not exist in file: " + csvPath);
+                }
+            }
+            for (CSVRecord record : parser) {
+                for (int column = 0; column < columns.length; column++) {
+                    int index = columns[column];
+                    out.writeInt(index < record.size() ? dictionaries[column].symbolOf(record.get(index)) : -1);
+                }
+                run.rowCount++;
+            }
+        }
+        return run;
+    }
+
+    /**
+     * Builds the node for the rows of a run, in memory if the run fits in the budget and otherwise by streaming
+     * it. The run is deleted once it has been read
+     * @param build the state of the build
+     * @param run the rows of the node
+     * @param attributes the attributes left to split on
+     * @return the new node
+     * @throws IOException if reading or writing a run fails
+     */
+    private ITreeNode buildNode(Build build, Run run, List<String> attributes) throws IOException {
+        if (run.rowCount <= this.memoryBudget) {
+            EncodedDataset data = new EncodedDataset(this.load(build, run), attributes, build.attributeSelection);
+            this.delete(run);
+            return build.generator.generateTreeHelper(data, build.targetName());
+        }
+        int targetPosition = run.positionOf(build.targetColumn);
+        boolean countValues = build.attributeSelection == AttributeSelection.INFORMATION_GAIN;
+        int numClasses = build.dictionaries[build.targetColumn].size();
+        long[] classCounts = new long[numClasses];
+        int[] positions = new int[attributes.size()];
+        long[][] valueCounts = new long[attributes.size()][];
+        for (int i = 0; i < positions.length; i++) {
+            int column = build.columnNames.indexOf(attributes.get(i));
+            positions[i] = run.positionOf(column);
+            valueCounts[i] = countValues ? new long[build.dictionaries[column].size() * numClasses] : null;
+        }
+        int[] codes = new int[run.columns.length];
+        try (DataInputStream in = run.reader()) {
+            for (long row = 0; row < run.rowCount; row++) {
+                readRow(in, codes);
+                int outcome = build.checkCode(codes[targetPosition], build.targetColumn);
+                classCounts[outcome]++;
+                for (int i = 0; countValues && i < positions.length; i++) {
+                    int code = build.checkCode(codes[positions[i]], run.columns[positions[i]]);
+                    valueCounts[i][code * numClasses + outcome]++;
+                }
+            }
+        }
+
+        Map<String, Long> outcomes = build.decode(build.targetColumn, classCounts);
+        String defaultValue = Dataset.majority(outcomes);
+        if (outcomes.size() == 1 || attributes.isEmpty()) {
+            this.delete(run);
+            return build.generator.makeLeaf(defaultValue);
+        }
+        String attribute = this.selectAttribute(build, attributes, valueCounts, numClasses);
+        int splitColumn = build.columnNames.indexOf(attribute);
+        List<String> remaining = new ArrayList<>(attributes);
+        remaining.remove(attribute);
+
+        Map<Integer, Run> children = this.partition(build, run, splitColumn);
+        List<ValueEdge> edgeList = new ArrayList<>();
+        ITreeNode majorityChild = null;
+        long majoritySize = 0;
+        for (Map.Entry<Integer, Run> child : children.entrySet()) {
+            long size = child.getValue().rowCount;
+            ITreeNode node = this.buildNode(build, child.getValue(), remaining);
+            edgeList.add(new ValueEdge(build.dictionaries[splitColumn].stringOf(child.getKey()), node));
+            if (size > majoritySize) {
+                majorityChild = node;
+                majoritySize = size;
+            }
+        }
+        return build.generator.makeNode(attribute, defaultValue, edgeList, majorityChild);
+    }
+
+    /**
+     * Picks the attribute to split on the same way Dataset does, using the streamed counts for information gain
+     * @param build the state of the build
+     * @param attributes the attributes left to split on
+     * @param valueCounts the (value, target value) counts of each attribute, or nulls if they were not counted
+     * @param numClasses the number of values of the target
+     * @return the attribute to split on
+     */
+    private String selectAttribute(Build build, List<String> attributes, long[][] valueCounts, int numClasses) {
+        if (build.attributeSelection != AttributeSelection.INFORMATION_GAIN) {
+            return new Dataset(attributes, new ArrayList<>(), build.attributeSelection).getAttributeToSplitOn();
+        }
+        String best = null;
+        double bestEntropy = Double.POSITIVE_INFINITY;
+        for (String attribute : attributes.stream().sorted().toList()) {
+            long[] table = valueCounts[attributes.indexOf(attribute)];
+            List<Map<String, Long>> groups = new ArrayList<>();
+            for (int start = 0; start < table.length; start += numClasses) {
+                Map<String, Long> group = new LinkedHashMap<>();
+                for (int outcome = 0; outcome < numClasses; outcome++) {
+                    if (table[start + outcome] > 0) {
+                        group.put(build.dictionaries[build.targetColumn].stringOf(outcome), table[start + outcome]);
+                    }
+                }
+                groups.add(group);
+            }
+            double entropy = Dataset.splitEntropy(groups);
+            if (entropy < bestEntropy) {
+                best = attribute;
+                bestEntropy = entropy;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Streams a run into one run per value of a column, dropping the column. The parent run is deleted
+     * @param build the state of the build
+     * @param run the run to split
+     * @param splitColumn the column to split on
+     * @return the run of each code, in the order the codes first appear
+     * @throws IOException if reading or writing a run fails
+     */
+    private Map<Integer, Run> partition(Build build, Run run, int splitColumn) throws IOException {
+        int splitPosition = run.positionOf(splitColumn);
+        int[] childColumns = new int[run.columns.length - 1];
+        for (int position = 0, filled = 0; position < run.columns.length; position++) {
+            if (position != splitPosition) {
+                childColumns[filled++] = run.columns[position];
+            }
+        }
+        Map<Integer, Run> children = new LinkedHashMap<>();
+        Map<Integer, DataOutputStream> writers = new LinkedHashMap<>();
+        int[] codes = new int[run.columns.length];
+        try (DataInputStream in = run.reader()) {
+            for (long row = 0; row < run.rowCount; row++) {
+                readRow(in, codes);
+                int code = build.checkCode(codes[splitPosition], splitColumn);
+                DataOutputStream out = writers.get(code);
+                if (out == null) {
+                    Run child = this.newRun(childColumns);
+                    children.put(code, child);
+                    out = child.writer();
+                    writers.put(code, out);
+                }
+                for (int position = 0; position < codes.length; position++) {
+                    if (position != splitPosition) {
+                        out.writeInt(codes[position]);
+                    }
+                }
+                children.get(code).rowCount++;
+            }
+        } finally {
+            for (DataOutputStream out : writers.values()) {
+                out.close();
+            }
+        }
+        this.delete(run);
+        return children;
+    }
+
+    /**
+     * Reads a run into direct buffers, one per column
+     * @param build the state of the build
+     * @param run the run to load, which must fit in an int-indexed store
+     * @return a store over the rows of the run
+     * @throws IOException if reading the run fails
+     */
+    private OffHeapColumnStore load(Build build, Run run) throws IOException {
+        if (run.rowCount > Integer.MAX_VALUE / Integer.BYTES) {
+            throw new IllegalStateException("Run " + run.file + " has " + run.rowCount
+                    + " rows, more than an OffHeapColumnStore can hold");
+        }
+        int rowCount = (int) run.rowCount;
+        List<String> names = new ArrayList<>();
+        SymbolTable[] dictionaries = new SymbolTable[run.columns.length];
+        ByteBuffer[] columns = new ByteBuffer[run.columns.length];
+        for (int position = 0; position < run.columns.length; position++) {
+            names.add(build.columnNames.get(run.columns[position]));
+            dictionaries[position] = build.dictionaries[run.columns[position]];
+            columns[position] = ByteBuffer.allocateDirect(rowCount * Integer.BYTES).order(ByteOrder.nativeOrder());
+        }
+        try (DataInputStream in = run.reader()) {
+            for (int row = 0; row < rowCount; row++) {
+                for (ByteBuffer column : columns) {
+                    column.putInt(row * Integer.BYTES, in.readInt());
+                }
+            }
+        }
+        return new OffHeapColumnStore(names, dictionaries, columns, rowCount);
+    }
+
+    /**
+     * Makes a new empty run in the spill directory
+     * @param columns the columns the run holds
+     * @return the new run
+     * @throws IOException if the file cannot be created
+     */
+    private Run newRun(int[] columns) throws IOException {
+        Run run = new Run(Files.createTempFile(this.spillDirectory, "node", SUFFIX), columns);
+        this.liveRuns.add(run.file);
+        return run;
+    }
+
+    /**
+     * Deletes a run that has been read for the last time
+     * @param run the run to delete
+     * @throws IOException if the file cannot be deleted
+     */
+    private void delete(Run run) throws IOException {
+        Files.deleteIfExists(run.file);
+        this.liveRuns.remove(run.file);
+    }
+
+    /**
+     * Reads the codes of one row of a run
+     * @param in the stream of the run
+     * @param codes the array to read the codes into
+     * @throws IOException if reading fails
+     */
+    private static void readRow(DataInputStream in, int[] codes) throws IOException {
+        for (int position = 0; position < codes.length; position++) {
+            codes[position] = in.readInt();
+        }
+    }
+
+    /**
+     * Makes the column indices 0 to size - 1
+     * @param size the number of columns
+     * @return an array of every column index
+     */
+    private static int[] allColumns(int size) {
+        int[] columns = new int[size];
+        for (int i = 0; i < size; i++) {
+            columns[i] = i;
+        }
+        return columns;
+    }
+
+    /**
+     * A temporary file of encoded rows
+     */
+    private static class Run {
+        private final Path file;
+        private final int[] columns;
+        private long rowCount;
+
+        /**
+         * Constructor for a Run
+         * @param file the file holding the rows
+         * @param columns the index of each column of the run among all the columns
+         */
+        Run(Path file, int[] columns) {
+            this.file = file;
+            this.columns = columns;
+        }
+
+        /**
+         * Finds where a column is within each row of the run
+         * @param column the index of the column among all the columns
+         * @return its position in the run's rows
+         */
+        int positionOf(int column) {
+            for (int position = 0; position < this.columns.length; position++) {
+                if (this.columns[position] == column) {
+                    return position;
+                }
+            }
+            throw new IllegalStateException("Column " + column + " is not in run " + this.file);
+        }
+
+        /**
+         * Opens the run for writing
+         * @return a buffered stream over the file
+         * @throws IOException if the file cannot be opened
+         */
+        DataOutputStream writer() throws IOException {
+            return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(this.file)));
+        }
+
+        /**
+         * Opens the run for reading
+         * @return a buffered stream over the file
+         * @throws IOException if the file cannot be opened
+         */
+        DataInputStream reader() throws IOException {
+            return new DataInputStream(new BufferedInputStream(Files.newInputStream(this.file)));
+        }
+    }
+
+    /**
+     * The state shared by every node of one build
+     */
+    private static class Build {
+        private final TreeGenerator generator;
+        private final List<String> columnNames;
+        private final SymbolTable[] dictionaries;
+        private final int targetColumn;
+        private final AttributeSelection attributeSelection;
+
+        /**
+         * Constructor for a Build
+         * @param generator the generator making the nodes
+         * @param columnNames the names of all the columns
+         * @param dictionaries the dictionary of each column
+         * @param targetColumn the index of the target among the columns
+         * @param attributeSelection the way to select attributes
+         */
+        Build(TreeGenerator generator, List<String> columnNames, SymbolTable[] dictionaries, int targetColumn,
+              AttributeSelection attributeSelection) {
+            this.generator = generator;
+            this.columnNames = columnNames;
+            this.dictionaries = dictionaries;
+            this.targetColumn = targetColumn;
+            this.attributeSelection = attributeSelection;
+        }
+
+        /**
+         * Gets the name of the target
+         * @return the target attribute
+         */
+        String targetName() {
+            return this.columnNames.get(this.targetColumn);
+        }
+
+        /**
+         * Turns counts of codes into counts of values, in code order and leaving out values with no rows
+         * @param column the column the codes are from
+         * @param counts the number of rows for each code
+         * @return the number of rows for each value
+         */
+        Map<String, Long> decode(int column, long[] counts) {
+            Map<String, Long> values = new LinkedHashMap<>();
+            for (int code = 0; code < counts.length; code++) {
+                if (counts[code] > 0) {
+                    values.put(this.dictionaries[column].stringOf(code), counts[code]);
+                }
+            }
+            return values;
+        }
+
+        /**
+         * Fails the same way Row does when a row has no value for a column it is split or counted on
+         * @param code the code read from a run
+         * @param column the column the code is from
+         * @return the code
+         */
+        int checkCode(int code, int column) {
+            if (code < 0) {
+                throw new RuntimeException("Attribute '" + this.columnNames.get(column) + "' did not exist in row");
+            }
+            return code;
+        }
+    }
+}
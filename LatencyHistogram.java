@@ -0,0 +1,107 @@
+package sol;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent histogram of latencies in nanoseconds. Values are grouped into log-linear buckets (one group per
+ * power of two, each split into a fixed number of linear sub-buckets) in the style of HdrHistogram, so every
+ * recorded value is kept to within about 3% of its true value while the histogram stays a fixed size.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int GROUP_COUNT = 64 - SUB_BUCKET_BITS + 1;
+
+    private final AtomicLongArray counts;
+
+    /**
+     * Constructor for an empty LatencyHistogram
+     */
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(GROUP_COUNT * SUB_BUCKET_COUNT);
+    }
+
+    /**
+     * Records a single latency
+     * @param nanos the latency in nanoseconds, negative values are recorded as zero
+     */
+    public void record(long nanos) {
+        this.counts.incrementAndGet(bucketOf(Math.max(nanos, 0)));
+    }
+
+    /**
+     * Gets the total number of recorded latencies
+     * @return the number of values recorded
+     */
+    public long getCount() {
+        long total = 0;
+        for (int i = 0; i < this.counts.length(); i++) {
+            total += this.counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Finds the latency at the given percentile. The returned value is the upper bound of the bucket that the
+     * percentile falls into. If nothing has been recorded, it returns zero
+     * @param percentile a percentile between 0 and 100
+     * @return the latency in nanoseconds at that percentile
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+        }
+        long total = this.getCount();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < this.counts.length(); i++) {
+            seen += this.counts.get(i);
+            if (seen >= rank) {
+                return upperBoundOf(i);
+            }
+        }
+        return upperBoundOf(this.counts.length() - 1);
+    }
+
+    /**
+     * Clears all recorded latencies
+     */
+    public void reset() {
+        for (int i = 0; i < this.counts.length(); i++) {
+            this.counts.set(i, 0);
+        }
+    }
+
+    /**
+     * Finds the bucket a value belongs to. Values below SUB_BUCKET_COUNT get a bucket each, after that every
+     * power of two is split into SUB_BUCKET_COUNT linear buckets
+     * @param value a non-negative value
+     * @return the index of its bucket
+     */
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int group = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> group) - SUB_BUCKET_COUNT;
+        return (group + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * Finds the largest value that falls into a bucket
+     * @param bucket the index of the bucket
+     * @return the largest value in the bucket
+     */
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKET_COUNT) {
+            return bucket;
+        }
+        int group = bucket / SUB_BUCKET_COUNT - 1;
+        long subBucket = bucket % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        long upper = ((subBucket + 1) << group) - 1;
+        return upper < 0 ? Long.MAX_VALUE : upper;
+    }
+}
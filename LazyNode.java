@@ -0,0 +1,78 @@
+package sol;
+
+import java.util.List;
+
+import src.ITreeNode;
+import src.Row;
+
+/**
+ * A placeholder for a subtree that has not been built yet. It holds the rows that reached it, and the first
+ * decision that gets here builds one level of the subtree from them, whose own children are placeholders again.
+ * The level is built exactly once even when many threads reach it at the same time, and the rows are dropped as
+ * soon as it is built, so only the paths that decisions actually take ever cost time or memory.
+ */
+public class LazyNode implements ITreeNode {
+    private final TreeGenerator generator;
+    private final String targetAttribute;
+    private final List<String> possibleAttributes;
+    private AbstractDataset subset;
+    private volatile ITreeNode node;
+
+    /**
+     * Constructor for a LazyNode
+     * @param generator a snapshot of the settings of the generator that made the tree, which builds the subtree
+     * @param subset the rows that reach this node
+     * @param targetAttribute the attribute the tree predicts
+     */
+    LazyNode(TreeGenerator generator, AbstractDataset subset, String targetAttribute) {
+        this.generator = generator;
+        this.subset = subset;
+        this.targetAttribute = targetAttribute;
+        this.possibleAttributes = List.copyOf(subset.getAttributeList());
+    }
+
+    /**
+     * Builds the subtree if needed and passes the decision on to it
+     * @param forDatum the datum to lookup a decision for
+     * @return the decision of the subtree
+     */
+    @Override
+    public String getDecision(Row forDatum) {
+        return this.materialize().getDecision(forDatum);
+    }
+
+    /**
+     * Gets the subtree, building its top level the first time
+     * @return the subtree
+     */
+    ITreeNode materialize() {
+        ITreeNode built = this.node;
+        if (built == null) {
+            synchronized (this) {
+                built = this.node;
+                if (built == null) {
+                    built = this.generator.expand(this.subset, this.targetAttribute);
+                    this.node = built;
+                    this.subset = null;
+                }
+            }
+        }
+        return built;
+    }
+
+    /**
+     * Gets the subtree if it has been built
+     * @return the subtree, or null if no decision has reached this node yet
+     */
+    ITreeNode getMaterialized() {
+        return this.node;
+    }
+
+    /**
+     * Gets the attributes the subtree may split on once it is built
+     * @return the attributes left at this node
+     */
+    List<String> getPossibleAttributes() {
+        return this.possibleAttributes;
+    }
+}
@@ -0,0 +1,20 @@
+package sol;
+
+/**
+ * Enums representing what an attribute node does when a row has no value for its attribute, or has a value
+ * that none of its edges were trained on.
+ */
+public enum MissingValuePolicy {
+    /**
+     * Stop at the node and return its default value, the most common outcome of its training rows
+     */
+    DEFAULT,
+    /**
+     * Follow the edge that the most training rows went down
+     */
+    MAJORITY_BRANCH,
+    /**
+     * Throw a RuntimeException
+     */
+    FAIL;
+}
@@ -0,0 +1,150 @@
+package sol;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import src.AttributeSelection;
+
+/**
+ * A class that trains one tree for each of several target attributes of the same data. The data is parsed and
+ * encoded once and every tree reads the same store through a view of its own, the class counts of all the
+ * targets are found in a single pass over the rows, and the trees are grown in parallel. The targets are never
+ * used as features, so no tree can split on another tree's label.
+ */
+public class MultiTargetTrainer {
+    private final EncodedDataset data;
+    private final List<String> targetAttributes;
+    private final Supplier<TreeGenerator> generators;
+
+    /**
+     * Constructor for a MultiTargetTrainer whose trees use the default generator settings
+     * @param data the dataset to train on, which holds every target as a column
+     * @param targetAttributes the attributes to predict
+     */
+    public MultiTargetTrainer(EncodedDataset data, List<String> targetAttributes) {
+        this(data, targetAttributes, TreeGenerator::new);
+    }
+
+    /**
+     * Constructor for a MultiTargetTrainer
+     * @param data the dataset to train on, which holds every target as a column
+     * @param targetAttributes the attributes to predict
+     * @param generators makes a configured generator for each tree
+     */
+    public MultiTargetTrainer(EncodedDataset data, List<String> targetAttributes,
+                              Supplier<TreeGenerator> generators) {
+        if (targetAttributes.isEmpty()) {
+            throw new IllegalArgumentException("Need at least one target attribute");
+        }
+        for (String target : targetAttributes) {
+            data.columnOf(target);
+        }
+        this.data = data;
+        this.targetAttributes = List.copyOf(targetAttributes);
+        this.generators = generators;
+    }
+
+    /**
+     * Streams a CSV file into an encoded dataset once and makes a MultiTargetTrainer for it
+     * @param filepath the path to the CSV file
+     * @param targetAttributes the attributes to predict
+     * @param attributeSelection the way the trees select attributes
+     * @return the new MultiTargetTrainer
+     */
+    public static MultiTargetTrainer fromFile(String filepath, List<String> targetAttributes,
+                                              AttributeSelection attributeSelection) {
+        return new MultiTargetTrainer(EncodedDataset.fromCsv(filepath, null, attributeSelection), targetAttributes);
+    }
+
+    /**
+     * Counts the values of every target in one pass over the rows
+     * @return a map from each target to the number of rows for each of its values
+     */
+    public Map<String, Map<String, Integer>> classCounts() {
+        ColumnStore store = this.data.getStore();
+        int[] columns = new int[this.targetAttributes.size()];
+        int[][] counts = new int[columns.length][];
+        for (int t = 0; t < columns.length; t++) {
+            columns[t] = this.data.columnOf(this.targetAttributes.get(t));
+            counts[t] = new int[store.dictionary(columns[t]).size()];
+        }
+        for (int row : this.data.getRowIndices()) {
+            for (int t = 0; t < columns.length; t++) {
+                int code = store.code(row, columns[t]);
+                if (code < 0) {
+                    throw new RuntimeException("Attribute '" + this.targetAttributes.get(t)
+                            + "' did not exist in row " + row);
+                }
+                counts[t][code]++;
+            }
+        }
+        Map<String, Map<String, Integer>> classCounts = new LinkedHashMap<>();
+        for (int t = 0; t < columns.length; t++) {
+            Map<String, Integer> targetCounts = new LinkedHashMap<>();
+            for (int code = 0; code < counts[t].length; code++) {
+                if (counts[t][code] > 0) {
+                    targetCounts.put(store.dictionary(columns[t]).stringOf(code), counts[t][code]);
+                }
+            }
+            classCounts.put(this.targetAttributes.get(t), targetCounts);
+        }
+        return classCounts;
+    }
+
+    /**
+     * Trains a tree for every target. A target with a single value gets its leaf straight from the class counts,
+     * and the other trees are grown in parallel over the shared store. The trees split on different attributes,
+     * so apart from the class counts each one counts its own partitions
+     * @param threads the number of trees to grow at once
+     * @return a map from each target to the generator holding its tree, in the order of the targets
+     */
+    public Map<String, TreeGenerator> train(int threads) {
+        if (this.data.size() == 0) {
+            throw new IndexOutOfBoundsException("Dataset is Empty");
+        }
+        Map<String, Map<String, Integer>> classCounts = this.classCounts();
+        EncodedDataset features = this.data;
+        for (String target : this.targetAttributes) {
+            features = features.cloneWithRemoveFromAttribute(target);
+        }
+
+        Map<String, TreeGenerator> trees = new LinkedHashMap<>();
+        Map<String, Future<?>> results = new LinkedHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads,
+                this.targetAttributes.size())));
+        try {
+            for (String target : this.targetAttributes) {
+                TreeGenerator generator = this.generators.get();
+                trees.put(target, generator);
+                Map<String, Integer> counts = classCounts.get(target);
+                if (counts.size() == 1) {
+                    generator.startBuild();
+                    generator.finishBuild(generator.makeLeaf(counts.keySet().iterator().next()));
+                } else {
+                    // each tree reads the store through its own view, which caches the codes of its own target
+                    EncodedDataset view = features.cloneWithRemoveFromAttribute(target);
+                    results.put(target, executor.submit(() -> generator.generateTree(view, target)));
+                }
+            }
+            for (Map.Entry<String, Future<?>> result : results.entrySet()) {
+                try {
+                    result.getValue().get();
+                } catch (ExecutionException e) {
+                    throw new RuntimeException("Tree for '" + result.getKey() + "' failed to train", e.getCause());
+                }
+            }
+            return trees;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while training", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
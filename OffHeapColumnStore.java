@@ -0,0 +1,250 @@
+package sol;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import src.DecisionTreeCSVParser;
+import src.Row;
+import src.SymbolTable;
+
+/**
+ * A ColumnStore that keeps its codes outside of the Java heap. Every column is a direct ByteBuffer of four-byte
+ * codes, which can optionally be a memory-mapped region of a file, so the garbage collector never has to scan
+ * the bulk of the data. Only the column dictionaries live on the heap. A single column can hold at most
+ * Integer.MAX_VALUE / 4 rows.
+ */
+public class OffHeapColumnStore implements ColumnStore {
+    private final List<String> columnNames;
+    private final Map<String, Integer> columnIndices;
+    private final SymbolTable[] dictionaries;
+    private final ByteBuffer[] columns;
+    private final int rowCount;
+
+    /**
+     * Constructor for an OffHeapColumnStore over buffers that have already been filled with codes
+     * @param columnNames the names of the columns
+     * @param dictionaries the dictionary of each column
+     * @param columns a buffer of codes for each column
+     * @param rowCount the number of rows in every column
+     */
+    OffHeapColumnStore(List<String> columnNames, SymbolTable[] dictionaries, ByteBuffer[] columns, int rowCount) {
+        this.columnNames = new ArrayList<>(columnNames);
+        this.columnIndices = new HashMap<>();
+        for (int i = 0; i < this.columnNames.size(); i++) {
+            this.columnIndices.put(this.columnNames.get(i), i);
+        }
+        this.dictionaries = dictionaries;
+        this.columns = columns;
+        this.rowCount = rowCount;
+    }
+
+    /**
+     * Encodes rows into direct buffers
+     * @param columnNames the columns to keep
+     * @param rows the rows to encode
+     * @return the new store
+     */
+    public static OffHeapColumnStore encode(List<String> columnNames, List<Row> rows) {
+        return fill(columnNames, rows, allocate(columnNames.size(), rows.size()));
+    }
+
+    /**
+     * Encodes rows into a memory-mapped file, one region per column. The file is overwritten, and the
+     * operating system pages the data in and out as it is used
+     * @param columnNames the columns to keep
+     * @param rows the rows to encode
+     * @param file the file to map the columns into
+     * @return the new store
+     */
+    public static OffHeapColumnStore encode(List<String> columnNames, List<Row> rows, Path file) {
+        return fill(columnNames, rows, map(file, columnNames.size(), rows.size()));
+    }
+
+    /**
+     * Streams a CSV file into direct buffers without ever making a Row. The file is read twice, once to count
+     * its records and once to encode them, so only one record and the dictionaries are on the heap at a time
+     * @param csvPath the path to the CSV file
+     * @param columnNames the columns to keep, or null to keep every column of the header
+     * @return the new store
+     */
+    public static OffHeapColumnStore fromCsv(String csvPath, List<String> columnNames) {
+        return stream(csvPath, columnNames, OffHeapColumnStore::allocate);
+    }
+
+    /**
+     * Streams a CSV file into a memory-mapped file the same way, for files whose codes do not fit in memory
+     * either. The file is overwritten
+     * @param csvPath the path to the CSV file
+     * @param columnNames the columns to keep, or null to keep every column of the header
+     * @param file the file to map the columns into
+     * @return the new store
+     */
+    public static OffHeapColumnStore fromCsv(String csvPath, List<String> columnNames, Path file) {
+        return stream(csvPath, columnNames, (numColumns, rowCount) -> map(file, numColumns, rowCount));
+    }
+
+    /**
+     * Allocates a direct buffer for each column
+     * @param numColumns the number of columns
+     * @param rowCount the number of rows in every column
+     * @return the buffers
+     */
+    private static ByteBuffer[] allocate(int numColumns, int rowCount) {
+        ByteBuffer[] columns = new ByteBuffer[numColumns];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = ByteBuffer.allocateDirect(Math.multiplyExact(rowCount, Integer.BYTES))
+                    .order(ByteOrder.nativeOrder());
+        }
+        return columns;
+    }
+
+    /**
+     * Maps a region of a file for each column, overwriting the file
+     * @param file the file to map the columns into
+     * @param numColumns the number of columns
+     * @param rowCount the number of rows in every column
+     * @return the buffers
+     */
+    private static ByteBuffer[] map(Path file, int numColumns, int rowCount) {
+        long columnBytes = (long) rowCount * Integer.BYTES;
+        ByteBuffer[] columns = new ByteBuffer[numColumns];
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = channel.map(FileChannel.MapMode.READ_WRITE, i * columnBytes, columnBytes)
+                        .order(ByteOrder.nativeOrder());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("IOException when mapping file: " + file, e);
+        }
+        return columns;
+    }
+
+    /**
+     * Counts the records of a CSV file, allocates the columns and then encodes the records straight from the
+     * parser into them
+     * @param csvPath the path to the CSV file
+     * @param columnNames the columns to keep, or null to keep every column of the header
+     * @param allocate makes the buffers from the number of columns and rows
+     * @return the new store
+     */
+    private static OffHeapColumnStore stream(String csvPath, List<String> columnNames,
+                                             BiFunction<Integer, Integer, ByteBuffer[]> allocate) {
+        List<String> names;
+        int[] indices;
+        int rowCount = 0;
+        try (CSVParser parser = DecisionTreeCSVParser.open(csvPath)) {
+            List<String> headerNames = parser.getHeaderNames();
+            names = columnNames == null ? headerNames : columnNames;
+            indices = new int[names.size()];
+            for (int column = 0; column < indices.length; column++) {
+                indices[column] = headerNames.indexOf(names.get(column));
+                if (indices[column] < 0) {
+                    throw new RuntimeException("Column '" + names.get(column)
+                            + "' did not exist in file: " + csvPath);
+                }
+            }
+            for (CSVRecord ignored : parser) {
+                rowCount++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("IOException when reading file: " + csvPath, e);
+        }
+
+        ByteBuffer[] columns = allocate.apply(names.size(), rowCount);
+        SymbolTable[] dictionaries = new SymbolTable[names.size()];
+        for (int column = 0; column < dictionaries.length; column++) {
+            dictionaries[column] = new SymbolTable();
+        }
+        int row = 0;
+        try (CSVParser parser = DecisionTreeCSVParser.open(csvPath)) {
+            for (CSVRecord record : parser) {
+                if (row == rowCount) {
+                    break;
+                }
+                for (int column = 0; column < indices.length; column++) {
+                    int index = indices[column];
+                    int code = index < record.size() ? dictionaries[column].symbolOf(record.get(index)) : -1;
+                    columns[column].putInt(row * Integer.BYTES, code);
+                }
+                row++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("IOException when reading file: " + csvPath, e);
+        }
+        if (row != rowCount) {
+            throw new IllegalStateException("File changed while it was being read: " + csvPath);
+        }
+        return new OffHeapColumnStore(names, dictionaries, columns, rowCount);
+    }
+
+    /**
+     * Writes the codes of every row into the column buffers
+     * @param columnNames the columns to keep
+     * @param rows the rows to encode
+     * @param columns an empty buffer for each column
+     * @return the new store
+     */
+    private static OffHeapColumnStore fill(List<String> columnNames, List<Row> rows, ByteBuffer[] columns) {
+        SymbolTable[] dictionaries = new SymbolTable[columnNames.size()];
+        for (int column = 0; column < dictionaries.length; column++) {
+            dictionaries[column] = new SymbolTable();
+            String columnName = columnNames.get(column);
+            for (int row = 0; row < rows.size(); row++) {
+                // peeking keeps the reads out of the row's access order, and a value set to null is missing
+                String value = rows.get(row).peekAttributeValue(columnName);
+                int code = value == null ? -1 : dictionaries[column].symbolOf(value);
+                columns[column].putInt(row * Integer.BYTES, code);
+            }
+        }
+        return new OffHeapColumnStore(columnNames, dictionaries, columns, rows.size());
+    }
+
+    @Override
+    public int rowCount() {
+        return this.rowCount;
+    }
+
+    @Override
+    public List<String> getColumnNames() {
+        return this.columnNames;
+    }
+
+    @Override
+    public int columnIndex(String columnName) {
+        Integer index = this.columnIndices.get(columnName);
+        return index == null ? -1 : index;
+    }
+
+    @Override
+    public int code(int row, int column) {
+        return this.columns[column].getInt(row * Integer.BYTES);
+    }
+
+    @Override
+    public SymbolTable dictionary(int column) {
+        return this.dictionaries[column];
+    }
+
+    /**
+     * Gets the buffer holding the codes of a column
+     * @param column the index of the column
+     * @return a read-only view of the column's buffer
+     */
+    ByteBuffer columnBuffer(int column) {
+        return this.columns[column].asReadOnlyBuffer().order(this.columns[column].order());
+    }
+}
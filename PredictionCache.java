@@ -0,0 +1,225 @@
+package sol;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import src.ITreeNode;
+import src.Row;
+
+/**
+ * A bounded cache of the decisions of one tree. A decision only depends on the values of the attributes the tree
+ * splits on, so the key of a row is just those values, collected from the tree's attribute nodes when the cache
+ * is built. Rows that differ only in attributes the tree never reads share one entry, and a repeated row is
+ * answered without walking the tree.
+ *
+ * The entries are spread over segments by the hash of their key, and each segment is a least recently used map
+ * behind its own lock, so threads only contend when they touch the same segment. A cache belongs to the tree it
+ * was built for: TreeGenerator builds a new one whenever it installs a new tree.
+ */
+public class PredictionCache {
+    private static final int MAX_SEGMENTS = 16;
+
+    private final List<String> keyAttributes;
+    private final Segment[] segments;
+    private final int maxEntries;
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    /**
+     * Constructor for a PredictionCache, which collects the attributes the tree splits on
+     * @param root the root of the tree whose decisions are cached
+     * @param maxEntries the most decisions to keep
+     */
+    public PredictionCache(ITreeNode root, int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Cache must hold at least one entry: " + maxEntries);
+        }
+        Set<String> attributes = new TreeSet<>();
+        collectAttributes(root, attributes, Collections.newSetFromMap(new IdentityHashMap<>()));
+        this.keyAttributes = List.copyOf(attributes);
+        int numSegments = Math.min(MAX_SEGMENTS, maxEntries);
+        this.segments = new Segment[numSegments];
+        for (int i = 0; i < numSegments; i++) {
+            // the first segments take the remainder, so the capacities add up to maxEntries
+            this.segments[i] = new Segment(maxEntries / numSegments + (i < maxEntries % numSegments ? 1 : 0));
+        }
+        this.maxEntries = maxEntries;
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+
+    /**
+     * Looks up the decision for a row, making and storing it on a miss. Decisions that throw are not stored
+     * @param datum the datum to lookup a decision for
+     * @param decide makes the decision of the tree for a row
+     * @return the decision of the tree
+     */
+    public String getDecision(Row datum, Function<Row, String> decide) {
+        List<String> key = this.keyOf(datum);
+        Segment segment = this.segments[Math.floorMod(spread(key.hashCode()), this.segments.length)];
+        String decision;
+        synchronized (segment) {
+            decision = segment.get(key);
+        }
+        if (decision != null) {
+            this.hits.increment();
+            return decision;
+        }
+        this.misses.increment();
+        decision = decide.apply(datum);
+        synchronized (segment) {
+            segment.put(key, decision);
+        }
+        return decision;
+    }
+
+    /**
+     * Gets the attributes the key of a row is made of
+     * @return the attributes the tree splits on, in alphabetical order
+     */
+    public List<String> getKeyAttributes() {
+        return this.keyAttributes;
+    }
+
+    /**
+     * Gets the number of decisions answered from the cache
+     * @return the number of hits
+     */
+    public long getHitCount() {
+        return this.hits.sum();
+    }
+
+    /**
+     * Gets the number of decisions that had to walk the tree
+     * @return the number of misses
+     */
+    public long getMissCount() {
+        return this.misses.sum();
+    }
+
+    /**
+     * Gets the share of decisions answered from the cache
+     * @return the hit rate between 0 and 1, or 0 if there have been no decisions
+     */
+    public double getHitRate() {
+        long hitCount = this.getHitCount();
+        long total = hitCount + this.getMissCount();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * Gets the number of decisions held
+     * @return the number of entries
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : this.segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Gets the most decisions the cache keeps
+     * @return the capacity
+     */
+    public int getMaxEntries() {
+        return this.maxEntries;
+    }
+
+    /**
+     * Drops every entry and clears the counters
+     */
+    public void clear() {
+        for (Segment segment : this.segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+        this.hits.reset();
+        this.misses.reset();
+    }
+
+    /**
+     * Makes the key of a row from its values of the key attributes, with null for the ones it has no value for.
+     * The values are read without recording them in the row's access order, which only the tree's reads belong in
+     * @param datum the row
+     * @return the key
+     */
+    private List<String> keyOf(Row datum) {
+        String[] values = new String[this.keyAttributes.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = datum.peekAttributeValue(this.keyAttributes.get(i));
+        }
+        return Arrays.asList(values);
+    }
+
+    /**
+     * Mixes the high bits of a hash into the low bits, which pick the segment
+     * @param hash the hash of a key
+     * @return the spread hash
+     */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Collects the attribute of every attribute node reachable from a node. Shared subtrees are only visited once.
+     * A lazy subtree that has not been built yet could split on any attribute left at it, so all of them are
+     * collected
+     * @param node the node to start from
+     * @param attributes the set to add the attributes to
+     * @param visited the nodes visited so far
+     */
+    private static void collectAttributes(ITreeNode node, Set<String> attributes, Set<ITreeNode> visited) {
+        if (node instanceof LazyNode lazyNode) {
+            ITreeNode built = lazyNode.getMaterialized();
+            if (built == null) {
+                attributes.addAll(lazyNode.getPossibleAttributes());
+            } else {
+                collectAttributes(built, attributes, visited);
+            }
+            return;
+        }
+        if (!(node instanceof AttributeNode attributeNode) || !visited.add(node)) {
+            return;
+        }
+        attributes.add(attributeNode.getAttribute());
+        for (ValueEdge edge : attributeNode.getOutgoingEdges()) {
+            collectAttributes(edge.getChild(), attributes, visited);
+        }
+    }
+
+    /**
+     * One segment of the cache, a map in access order that drops its least recently used entry when full
+     */
+    private static class Segment extends LinkedHashMap<List<String>, String> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        /**
+         * Constructor for a Segment
+         * @param capacity the most entries the segment keeps
+         */
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<String>, String> eldest) {
+            return this.size() > this.capacity;
+        }
+    }
+}
@@ -1,17 +1,33 @@
 package src;
 
+import java.util.AbstractSet;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
  * A class representing a single row of the training dataset.
+ *
+ * The values are kept in an array indexed by the ordinals of the row's schema, with null for attributes the
+ * row has no value for. An attribute that was set to null is present with a null value, the same as a key
+ * mapped to null, and is stored as a marker so it can be told apart from a missing one. Rows parsed from a
+ * file share the file's fixed schema; rows built one value at a time get a private schema that grows as
+ * values are set.
  */
 public class Row {
 
-    private Map<String, String> attributeValues;
+    // stands in for an attribute that was set to null, and is only ever compared by reference
+    private static final String NULL_VALUE = new String("null");
+
+    private Schema schema;
+    private boolean ownsSchema;
+    private String[] values;
+    private SymbolTable symbols;
+    private int[] codes;
     private String displayName;
     private List<String> attributeAccesses;
 
@@ -21,7 +37,9 @@ public class Row {
      */
     public Row(String displayName) {
         this.displayName = displayName;
-        this.attributeValues = new HashMap<>();
+        this.schema = Schema.growable();
+        this.ownsSchema = true;
+        this.values = new String[0];
         this.attributeAccesses = new ArrayList<>();
     }
 
@@ -30,21 +48,104 @@ public class Row {
      * @param valuesMap - a map from attributes to attribute values
      */
     public Row(Map<String, String> valuesMap) {
-        this.attributeValues = new HashMap<>();
-        this.attributeAccesses = new ArrayList<>();
+        this((String) null);
         this.setAttributeValues(valuesMap);
     }
 
+    /**
+     * Third constructor for Row, over a shared schema
+     * @param schema - the schema of the row
+     * @param values - the value of each column of the schema, or null where the row has none, which is not
+     *               copied
+     */
+    public Row(Schema schema, String[] values) {
+        if (values.length != schema.size()) {
+            throw new IllegalArgumentException("Row has " + values.length + " values but its schema has "
+                    + schema.size() + " columns");
+        }
+        this.schema = schema;
+        this.ownsSchema = false;
+        this.values = values;
+        this.attributeAccesses = new ArrayList<>();
+    }
+
+    /**
+     * Fourth constructor for Row, over a shared schema with values interned
+     * through a symbol table, whose symbols are kept so tree nodes can route
+     * the row by int instead of by string
+     * @param schema - the schema of the row
+     * @param values - the value of each column of the schema, or null where the row has none, which is not
+     *               copied
+     * @param symbols - the symbol table the values were interned through
+     * @param codes - the symbol of each value, or -1 where the row has none, which is not copied
+     */
+    public Row(Schema schema, String[] values, SymbolTable symbols, int[] codes) {
+        this(schema, values);
+        if (codes.length != values.length) {
+            throw new IllegalArgumentException("Row has " + values.length + " values but " + codes.length
+                    + " symbols");
+        }
+        this.symbols = symbols;
+        this.codes = codes;
+    }
+
+    /**
+     * Method to get the schema of the row, for resolving attribute names to ordinals once
+     * @return the schema
+     */
+    public Schema getSchema() {
+        return this.schema;
+    }
+
     /**
      * Method to obtain all attributes of a dataset.
      *
-     * From the "attributeValues" hashmap, we get all keys (equivalent to column names
-     * in the data table) as Strings, and the method returns them as a Set of Strings.
+     * These are the columns (equivalent to column names in the data table) that
+     * this row has a value for, returned as a Set of Strings in ordinal order.
      *
-     * @return a set of all attributes of a row
+     * @return a read-only set view of all attributes of a row
      */
     public Set<String> getAttributes() {
-        return this.attributeValues.keySet();
+        return new AbstractSet<>() {
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof String name && Row.this.findValue(Row.this.schema.ordinalOf(name)) != null;
+            }
+
+            @Override
+            public Iterator<String> iterator() {
+                return new Iterator<>() {
+                    private int next = this.skip(0);
+
+                    private int skip(int ordinal) {
+                        while (ordinal < Row.this.schema.size() && Row.this.values[ordinal] == null) {
+                            ordinal++;
+                        }
+                        return ordinal;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return this.next < Row.this.schema.size();
+                    }
+
+                    @Override
+                    public String next() {
+                        if (!this.hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        String name = Row.this.schema.getColumnName(this.next);
+                        this.next = this.skip(this.next + 1);
+                        return name;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return Row.this.valueCount();
+            }
+        };
     }
 
     /**
@@ -59,15 +160,151 @@ public class Row {
      * @return the value for the attribute
      */
     public String getAttributeValue(String attributeName) {
-        if (this.attributeValues.containsKey(attributeName)) {
+        String value = this.findValue(this.schema.ordinalOf(attributeName));
+        if (value != null) {
             this.attributeAccesses.add(attributeName);
-            return this.attributeValues.get(attributeName);
+            return unwrap(value);
         } else {
             throw new RuntimeException("Attribute '" + attributeName
                     + "' did not exist in datum with name: " + this.displayName);
         }
     }
 
+    /**
+     * Method to look up the value for the given attribute without failing.
+     *
+     * This works like getAttributeValue, except that a missing attribute is
+     * answered with null instead of an exception, so callers that expect sparse
+     * rows do not pay for building and throwing one.
+     *
+     * @param attributeName - the attribute
+     * @return the value for the attribute, or null if the row has no value for it or it was set to null
+     */
+    public String findAttributeValue(String attributeName) {
+        String value = this.findValue(this.schema.ordinalOf(attributeName));
+        if (value != null) {
+            this.attributeAccesses.add(attributeName);
+        }
+        return unwrap(value);
+    }
+
+    /**
+     * Method to look up the value for the given attribute without recording
+     * the access.
+     *
+     * This works like findAttributeValue, for callers such as caches that
+     * read a row without making a decision on it, so their reads do not show
+     * in the access order.
+     *
+     * @param attributeName - the attribute
+     * @return the value for the attribute, or null if the row has no value for it or it was set to null
+     */
+    public String peekAttributeValue(String attributeName) {
+        return unwrap(this.findValue(this.schema.ordinalOf(attributeName)));
+    }
+
+    /**
+     * Method to get the symbol table the row's values were interned through.
+     *
+     * @return the symbol table, or null if the row does not know the symbols
+     * of its values
+     */
+    public SymbolTable getSymbolTable() {
+        return this.symbols;
+    }
+
+    /**
+     * Method to look up the symbol of the value for the attribute at an
+     * ordinal of the row's schema, in the table from getSymbolTable.
+     *
+     * A symbol that is found is recorded as an access the same as reading
+     * the value, so callers that fall back on findAttributeValue when this
+     * answers -1 still leave one entry in the access order.
+     *
+     * @param ordinal - the ordinal of the attribute, or -1 for an attribute
+     *                the schema does not have
+     * @return the symbol of the value, or -1 if the row has no value for it
+     * or does not know its symbol
+     */
+    public int findAttributeSymbol(int ordinal) {
+        if (this.codes == null || ordinal < 0 || ordinal >= this.codes.length || this.codes[ordinal] < 0) {
+            return -1;
+        }
+        this.attributeAccesses.add(this.schema.getColumnName(ordinal));
+        return this.codes[ordinal];
+    }
+
+    /**
+     * Method to get the value for the attribute at an ordinal of the row's schema.
+     *
+     * This works like getAttributeValue, but skips looking the name up, for
+     * callers that resolved it against getSchema once for many rows.
+     *
+     * @param ordinal - the ordinal of the attribute
+     * @return the value for the attribute
+     */
+    public String getAttributeValue(int ordinal) {
+        String value = this.findValue(ordinal);
+        if (value != null) {
+            this.attributeAccesses.add(this.schema.getColumnName(ordinal));
+            return unwrap(value);
+        } else {
+            throw new RuntimeException("Attribute at ordinal " + ordinal
+                    + " did not exist in datum with name: " + this.displayName);
+        }
+    }
+
+    /**
+     * Method to look up the value for the attribute at an ordinal of the row's
+     * schema without failing.
+     *
+     * @param ordinal - the ordinal of the attribute, or -1 for an attribute
+     *                the schema does not have
+     * @return the value for the attribute, or null if the row has no value for it or it was set to null
+     */
+    public String findAttributeValue(int ordinal) {
+        String value = this.findValue(ordinal);
+        if (value != null) {
+            this.attributeAccesses.add(this.schema.getColumnName(ordinal));
+        }
+        return unwrap(value);
+    }
+
+    /**
+     * Reads a stored value without recording the access
+     *
+     * @param ordinal - the ordinal of the attribute, or -1
+     * @return the stored value, which is the null marker for an attribute set to null, or null if there is none
+     */
+    private String findValue(int ordinal) {
+        return ordinal >= 0 && ordinal < this.values.length ? this.values[ordinal] : null;
+    }
+
+    /**
+     * Turns a stored value back into the value that was set
+     *
+     * @param value - the stored value
+     * @return the value, with null for the null marker
+     */
+    private static String unwrap(String value) {
+        return value == NULL_VALUE ? null : value;
+    }
+
+    /**
+     * Counts the attributes the row has a value for
+     *
+     * @return the number of non-null values
+     */
+    private int valueCount() {
+        int count = 0;
+        for (int ordinal = 0; ordinal < this.schema.size(); ordinal++) {
+            if (this.values[ordinal] != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
     /**
      * Method to set the value of an attribute in the row.
      *
@@ -77,7 +314,22 @@ public class Row {
      * @param value         - the value of the given attribute
      */
     public void setAttributeValue(String attributeName, String value) {
-        this.attributeValues.put(attributeName, value);
+        // a set value has no symbol, so the row is routed by its strings from now on
+        this.symbols = null;
+        this.codes = null;
+        int ordinal = this.schema.ordinalOf(attributeName);
+        if (ordinal < 0) {
+            if (!this.ownsSchema) {
+                // the schema is shared with other rows, so this row gets its own copy to add to
+                this.schema = this.schema.growableCopy();
+                this.ownsSchema = true;
+            }
+            ordinal = this.schema.addColumn(attributeName);
+            if (ordinal >= this.values.length) {
+                this.values = Arrays.copyOf(this.values, Math.max(4, 2 * this.values.length));
+            }
+        }
+        this.values[ordinal] = value == null ? NULL_VALUE : value;
     }
 
 
@@ -87,7 +339,7 @@ public class Row {
      * @param valueMap - a map from attributes to values
      */
     protected void setAttributeValues(Map<String, String> valueMap) {
-        this.attributeValues.putAll(valueMap);
+        valueMap.forEach(this::setAttributeValue);
     }
 
     /**
@@ -138,11 +390,34 @@ public class Row {
         Row row = (Row) o;
         // If displayNames are both null then we only consider attr vals
         if (this.displayName == null || row.displayName == null){ // this clause to check null name cases.
-            return this.attributeValues.equals(row.attributeValues) &&
+            return this.sameValues(row) &&
                     this.displayName == null && row.displayName == null;
         } else {
-            return this.attributeValues.equals(row.attributeValues) &&
+            return this.sameValues(row) &&
                     this.displayName.equals(row.displayName);
         }
     }
+
+    /**
+     * Checks whether two rows have the same value for every attribute, even if
+     * their schemas order the attributes differently
+     *
+     * @param row - the other row
+     * @return whether the rows have the same attributes and values
+     */
+    private boolean sameValues(Row row) {
+        for (int ordinal = 0; ordinal < this.schema.size(); ordinal++) {
+            String value = this.values[ordinal];
+            if (value != null) {
+                int other = row.schema == this.schema ? ordinal
+                        : row.schema.ordinalOf(this.schema.getColumnName(ordinal));
+                String otherValue = row.findValue(other);
+                if (value == NULL_VALUE || otherValue == NULL_VALUE ? value != otherValue
+                        : !value.equals(otherValue)) {
+                    return false;
+                }
+            }
+        }
+        return this.valueCount() == row.valueCount();
+    }
 }
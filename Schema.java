@@ -0,0 +1,211 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The columns of a table of rows: their names, the ordinal of each name, and the type of each column. A parsed
+ * file has one fixed schema built from its header, and every row of the file holds its values in an array
+ * indexed by these ordinals, so looking up a column is one map lookup per schema instead of one per row.
+ *
+ * Rows built one value at a time instead keep a private schema that grows as values are set. Only fixed
+ * schemas may be shared, and callers that resolve a name to an ordinal once and reuse it must check isFixed.
+ */
+public class Schema {
+
+    /**
+     * The type of the values of a column, from the most to the least specific. Values are always stored as
+     * strings; the type records what they can be read as
+     */
+    public enum ColumnType {
+        BOOLEAN,
+        INTEGER,
+        DECIMAL,
+        STRING
+    }
+
+    private final List<String> columnNames;
+    private final List<ColumnType> columnTypes;
+    private final Map<String, Integer> ordinals;
+    private final boolean fixed;
+
+    /**
+     * Constructor for a fixed Schema whose columns are all strings
+     *
+     * @param columnNames the names of the columns, in ordinal order
+     */
+    public Schema(List<String> columnNames) {
+        this(columnNames, Collections.nCopies(columnNames.size(), ColumnType.STRING));
+    }
+
+    /**
+     * Constructor for a fixed Schema with a type for each column
+     *
+     * @param columnNames the names of the columns, in ordinal order
+     * @param columnTypes the type of each column
+     */
+    public Schema(List<String> columnNames, List<ColumnType> columnTypes) {
+        this(columnNames, columnTypes, true);
+    }
+
+    /**
+     * Constructor for a Schema
+     *
+     * @param columnNames the names of the columns, in ordinal order
+     * @param columnTypes the type of each column
+     * @param fixed       whether columns can never be added
+     */
+    private Schema(List<String> columnNames, List<ColumnType> columnTypes, boolean fixed) {
+        if (columnNames.size() != columnTypes.size()) {
+            throw new IllegalArgumentException("Schema has " + columnNames.size() + " columns but "
+                    + columnTypes.size() + " types");
+        }
+        this.columnNames = new ArrayList<>(columnNames);
+        this.columnTypes = new ArrayList<>(columnTypes);
+        this.ordinals = new HashMap<>();
+        for (int ordinal = 0; ordinal < columnNames.size(); ordinal++) {
+            if (this.ordinals.putIfAbsent(columnNames.get(ordinal), ordinal) != null) {
+                throw new IllegalArgumentException("Duplicate column: " + columnNames.get(ordinal));
+            }
+        }
+        this.fixed = fixed;
+    }
+
+    /**
+     * Makes an empty schema that columns can be added to, for a row built one value at a time
+     *
+     * @return the new schema
+     */
+    static Schema growable() {
+        return new Schema(new ArrayList<>(), new ArrayList<>(), false);
+    }
+
+    /**
+     * Makes a copy of this schema that columns can be added to
+     *
+     * @return the new schema
+     */
+    Schema growableCopy() {
+        return new Schema(this.columnNames, this.columnTypes, false);
+    }
+
+    /**
+     * Adds a string column to a growable schema
+     *
+     * @param columnName the name of the column
+     * @return the ordinal of the new column
+     */
+    int addColumn(String columnName) {
+        if (this.fixed) {
+            throw new IllegalStateException("Cannot add column '" + columnName + "' to a fixed schema");
+        }
+        this.columnNames.add(columnName);
+        this.columnTypes.add(ColumnType.STRING);
+        this.ordinals.put(columnName, this.columnNames.size() - 1);
+        return this.columnNames.size() - 1;
+    }
+
+    /**
+     * Gets the ordinal of a column
+     *
+     * @param columnName the name of the column
+     * @return the ordinal, or -1 if the schema has no such column
+     */
+    public int ordinalOf(String columnName) {
+        Integer ordinal = this.ordinals.get(columnName);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    /**
+     * Gets the name of a column
+     *
+     * @param ordinal the ordinal of the column
+     * @return the name of the column
+     */
+    public String getColumnName(int ordinal) {
+        return this.columnNames.get(ordinal);
+    }
+
+    /**
+     * Gets the names of every column
+     *
+     * @return a read-only list of the names, in ordinal order
+     */
+    public List<String> getColumnNames() {
+        return Collections.unmodifiableList(this.columnNames);
+    }
+
+    /**
+     * Gets the type of a column
+     *
+     * @param ordinal the ordinal of the column
+     * @return the type of the column
+     */
+    public ColumnType getType(int ordinal) {
+        return this.columnTypes.get(ordinal);
+    }
+
+    /**
+     * Gets the number of columns
+     *
+     * @return the number of columns
+     */
+    public int size() {
+        return this.columnNames.size();
+    }
+
+    /**
+     * Checks whether columns can never be added to this schema, so ordinals resolved against it stay valid
+     *
+     * @return whether the schema is fixed
+     */
+    public boolean isFixed() {
+        return this.fixed;
+    }
+
+    /**
+     * Finds the most specific type that a value can be read as
+     *
+     * @param value the value
+     * @return the type of the value
+     */
+    public static ColumnType typeOf(String value) {
+        if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false")) {
+            return ColumnType.BOOLEAN;
+        }
+        try {
+            Long.parseLong(value);
+            return ColumnType.INTEGER;
+        } catch (NumberFormatException e) {
+            // not an integer, try the next type
+        }
+        try {
+            Double.parseDouble(value);
+            return ColumnType.DECIMAL;
+        } catch (NumberFormatException e) {
+            return ColumnType.STRING;
+        }
+    }
+
+    /**
+     * Widens a column's type so that it also covers another value's type. Integers widen to decimals, and every
+     * other mix widens to strings
+     *
+     * @param columnType the type so far, or null if no value has been seen
+     * @param valueType  the type of another value
+     * @return the widened type
+     */
+    public static ColumnType widen(ColumnType columnType, ColumnType valueType) {
+        if (columnType == null || columnType == valueType) {
+            return valueType;
+        }
+        if ((columnType == ColumnType.INTEGER && valueType == ColumnType.DECIMAL)
+                || (columnType == ColumnType.DECIMAL && valueType == ColumnType.INTEGER)) {
+            return ColumnType.DECIMAL;
+        }
+        return ColumnType.STRING;
+    }
+}
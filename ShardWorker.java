@@ -0,0 +1,258 @@
+package sol;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import src.DecisionTreeCSVParser;
+import src.Schema;
+import src.SymbolTable;
+
+/**
+ * A worker process for distributed training. Each worker owns one shard of the rows of a CSV file, every
+ * numShards-th row starting at its shard index, and answers requests from a DistributedTrainer over its
+ * standard input and output. For each node of the tree the coordinator sends the conditions on the path to the
+ * node, and the worker replies with the counts of the target values and the (value, target value) counts of
+ * every remaining attribute over the rows of its shard that satisfy the path. No rows ever leave the worker.
+ *
+ * Every reply starts with a status byte. A request the worker cannot answer, for example because a row is missing
+ * a value it has to count, gets an ERROR status and the message of the failure instead of the counts, and the
+ * worker goes on serving, so the coordinator can report which shard failed.
+ *
+ * The coordinator builds the tree depth first, so the worker keeps the indices of the rows that reach each node
+ * on the path of the last request. A request for a child of a node on that path only filters the rows of its
+ * parent, instead of testing every condition of the path against the whole shard.
+ *
+ * Run as: java sol.ShardWorker csvPath shardIndex numShards
+ */
+public class ShardWorker {
+    static final byte SHUTDOWN = 0;
+    static final byte STATS = 1;
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    private final Schema schema;
+    private final List<String[]> shard;
+    private final List<Map.Entry<String, String>> conditions;
+    private final List<int[]> levels;
+
+    /**
+     * Constructor for a ShardWorker
+     * @param schema the columns of the rows
+     * @param shard the values of the rows this worker owns, indexed by the ordinals of the schema
+     */
+    ShardWorker(Schema schema, List<String[]> shard) {
+        this.schema = schema;
+        this.shard = shard;
+        this.conditions = new ArrayList<>();
+        this.levels = new ArrayList<>();
+        int[] allRows = new int[shard.size()];
+        for (int i = 0; i < allRows.length; i++) {
+            allRows[i] = i;
+        }
+        this.levels.add(allRows);
+    }
+
+    /**
+     * Loads the worker's shard and serves requests until the coordinator shuts it down
+     * @param args the path to the CSV file, the index of this worker's shard and the number of shards
+     * @throws IOException if the pipes to the coordinator fail
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            throw new IllegalArgumentException("Usage: ShardWorker csvPath shardIndex numShards");
+        }
+        int shardIndex = Integer.parseInt(args[1]);
+        int numShards = Integer.parseInt(args[2]);
+        Schema schema;
+        List<String[]> shard = new ArrayList<>();
+        try (CSVParser parser = DecisionTreeCSVParser.open(args[0])) {
+            schema = new Schema(parser.getHeaderNames());
+            SymbolTable symbols = new SymbolTable();
+            for (CSVRecord record : parser) {
+                // records are numbered from 1, and the other shards' records are skipped without copying them
+                if ((record.getRecordNumber() - 1) % numShards != shardIndex) {
+                    continue;
+                }
+                String[] values = new String[schema.size()];
+                for (int i = 0; i < values.length && i < record.size(); i++) {
+                    values[i] = symbols.intern(record.get(i));
+                }
+                shard.add(values);
+            }
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(System.out));
+        new ShardWorker(schema, shard).serve(in, out);
+    }
+
+    /**
+     * Answers requests until a shutdown request or the end of the input
+     * @param in the requests from the coordinator
+     * @param out the replies to the coordinator
+     * @throws IOException if reading or writing fails
+     */
+    void serve(DataInputStream in, DataOutputStream out) throws IOException {
+        while (true) {
+            byte command;
+            try {
+                command = in.readByte();
+            } catch (EOFException e) {
+                return;
+            }
+            if (command == SHUTDOWN) {
+                return;
+            } else if (command != STATS) {
+                throw new IOException("Unknown command: " + command);
+            }
+            Map<String, String> path = new LinkedHashMap<>();
+            int numConditions = in.readInt();
+            for (int i = 0; i < numConditions; i++) {
+                path.put(in.readUTF(), in.readUTF());
+            }
+            String targetAttribute = in.readUTF();
+            List<String> attributes = new ArrayList<>();
+            int numAttributes = in.readInt();
+            for (int i = 0; i < numAttributes; i++) {
+                attributes.add(in.readUTF());
+            }
+            try {
+                this.writeStats(out, path, targetAttribute, attributes);
+            } catch (RuntimeException e) {
+                out.writeByte(ERROR);
+                out.writeUTF(String.valueOf(e.getMessage()));
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * Counts the target values and the (value, target value) pairs of each attribute over the shard's rows that
+     * satisfy every condition of a path, and writes them out after an OK status. Everything is counted before
+     * anything is written, so a row missing a value fails the request without writing part of a reply
+     * @param out the replies to the coordinator
+     * @param path the attribute values on the path to the node
+     * @param targetAttribute the attribute being predicted
+     * @param attributes the attributes left to split on
+     * @throws IOException if writing fails
+     */
+    private void writeStats(DataOutputStream out, Map<String, String> path, String targetAttribute,
+                            List<String> attributes) throws IOException {
+        Map<String, Integer> classCounts = new LinkedHashMap<>();
+        List<Map<String, Map<String, Integer>>> valueCounts = new ArrayList<>();
+        for (int i = 0; i < attributes.size(); i++) {
+            valueCounts.add(new LinkedHashMap<>());
+        }
+        int target = this.schema.ordinalOf(targetAttribute);
+        int[] ordinals = new int[attributes.size()];
+        for (int i = 0; i < ordinals.length; i++) {
+            ordinals[i] = this.schema.ordinalOf(attributes.get(i));
+        }
+        for (int index : this.select(path)) {
+            String[] row = this.shard.get(index);
+            String outcome = valueOf(row, target, targetAttribute);
+            classCounts.merge(outcome, 1, Integer::sum);
+            for (int i = 0; i < ordinals.length; i++) {
+                valueCounts.get(i).computeIfAbsent(valueOf(row, ordinals[i], attributes.get(i)),
+                        v -> new LinkedHashMap<>()).merge(outcome, 1, Integer::sum);
+            }
+        }
+        out.writeByte(OK);
+        writeCounts(out, classCounts);
+        for (Map<String, Map<String, Integer>> counts : valueCounts) {
+            out.writeInt(counts.size());
+            for (Map.Entry<String, Map<String, Integer>> entry : counts.entrySet()) {
+                out.writeUTF(entry.getKey());
+                writeCounts(out, entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Finds the rows of the shard that satisfy every condition of a path. The levels kept for the conditions the
+     * path shares with the last one are reused, and only the conditions after them are applied, each to the rows
+     * of the level above it
+     * @param path the attribute values on the path to the node
+     * @return the indices of the rows in the shard, which must not be modified
+     */
+    private int[] select(Map<String, String> path) {
+        List<Map.Entry<String, String>> wanted = new ArrayList<>(path.entrySet());
+        int depth = 0;
+        while (depth < wanted.size() && depth < this.conditions.size()
+                && this.conditions.get(depth).equals(wanted.get(depth))) {
+            depth++;
+        }
+        while (this.conditions.size() > depth) {
+            this.conditions.remove(this.conditions.size() - 1);
+            this.levels.remove(this.levels.size() - 1);
+        }
+        for (; depth < wanted.size(); depth++) {
+            Map.Entry<String, String> condition = Map.entry(wanted.get(depth).getKey(), wanted.get(depth).getValue());
+            int column = this.schema.ordinalOf(condition.getKey());
+            int[] parent = this.levels.get(depth);
+            int[] matching = new int[parent.length];
+            int count = 0;
+            for (int index : parent) {
+                String[] row = this.shard.get(index);
+                if (column >= 0 && condition.getValue().equals(row[column])) {
+                    matching[count++] = index;
+                }
+            }
+            this.conditions.add(condition);
+            this.levels.add(Arrays.copyOf(matching, count));
+        }
+        return this.levels.get(wanted.size());
+    }
+
+    /**
+     * Reads a value of a row, failing like Row.getAttributeValue when the row has none
+     * @param row the values of the row
+     * @param ordinal the ordinal of the column, or -1
+     * @param attribute the name of the column
+     * @return the value
+     */
+    private static String valueOf(String[] row, int ordinal, String attribute) {
+        if (ordinal < 0 || row[ordinal] == null) {
+            throw new RuntimeException("Attribute '" + attribute + "' did not exist in datum");
+        }
+        return row[ordinal];
+    }
+
+    /**
+     * Writes a map of counts as its size followed by (value, count) pairs
+     * @param out the stream to write to
+     * @param counts the counts to write
+     * @throws IOException if writing fails
+     */
+    static void writeCounts(DataOutputStream out, Map<String, Integer> counts) throws IOException {
+        out.writeInt(counts.size());
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+    }
+
+    /**
+     * Reads a map of counts written by writeCounts, adding them into an existing map
+     * @param in the stream to read from
+     * @param counts the map to add the counts to
+     * @throws IOException if reading fails
+     */
+    static void readCounts(DataInputStream in, Map<String, Integer> counts) throws IOException {
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            counts.merge(in.readUTF(), in.readInt(), Integer::sum);
+        }
+    }
+}
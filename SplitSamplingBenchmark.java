@@ -0,0 +1,72 @@
+package sol;
+
+import java.util.List;
+
+import src.AttributeSelection;
+import src.Row;
+
+/**
+ * A benchmark of approximate split selection. It trains information gain trees on synthetic data with and
+ * without sampling, and prints the build time of each next to its accuracy on held-out rows, so the speedup can
+ * be weighed against what it costs in accuracy.
+ */
+public class SplitSamplingBenchmark {
+    private static final int NUM_ROWS = 200000;
+    private static final int NUM_TEST_ROWS = 20000;
+    private static final int NUM_ATTRIBUTES = 10;
+    private static final int NUM_VALUES = 4;
+    private static final int SAMPLING_THRESHOLD = 20000;
+    private static final int SAMPLE_SIZE = 5000;
+    private static final int ROUNDS = 5;
+
+    /**
+     * Runs the benchmark and prints the results
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        List<String> attributes = BenchmarkData.attributes(NUM_ATTRIBUTES);
+        EncodedDataset training = EncodedDataset.encode(attributes,
+                BenchmarkData.generate(NUM_ROWS, NUM_ATTRIBUTES, NUM_VALUES, 1),
+                AttributeSelection.INFORMATION_GAIN);
+        List<Row> testing = BenchmarkData.generate(NUM_TEST_ROWS, NUM_ATTRIBUTES, NUM_VALUES, 2);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            TreeGenerator exact = new TreeGenerator();
+            long exactNanos = time(exact, training);
+            TreeGenerator sampled = new TreeGenerator();
+            sampled.setSplitSampling(SAMPLING_THRESHOLD, SAMPLE_SIZE, round);
+            long sampledNanos = time(sampled, training);
+            System.out.printf("Round %d: exact %d ms, accuracy %.4f | sampled %d ms, accuracy %.4f | "
+                            + "speedup %.2fx%n", round, exactNanos / 1000000, accuracy(exact, testing),
+                    sampledNanos / 1000000, accuracy(sampled, testing), (double) exactNanos / sampledNanos);
+        }
+    }
+
+    /**
+     * Generates a tree and times it
+     * @param generator the generator to train
+     * @param training the training data
+     * @return the time taken in nanoseconds
+     */
+    private static long time(TreeGenerator generator, EncodedDataset training) {
+        long start = System.nanoTime();
+        generator.generateTree(training, BenchmarkData.TARGET);
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Calculates the accuracy of a trained tree
+     * @param generator the trained generator
+     * @param testing the rows to score
+     * @return the share of rows decided correctly
+     */
+    private static double accuracy(TreeGenerator generator, List<Row> testing) {
+        double numCorrectClassifications = 0;
+        for (Row datum : testing) {
+            if (generator.getDecision(datum).equals(datum.getAttributeValue(BenchmarkData.TARGET))) {
+                numCorrectClassifications += 1;
+            }
+        }
+        return numCorrectClassifications / testing.size();
+    }
+}
@@ -0,0 +1,109 @@
+package src;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A table of canonical strings. Every distinct string added to the table gets one shared instance and a dense
+ * int symbol, so that rows and tree nodes built from the same table can compare attribute names and values by
+ * reference or by symbol instead of comparing characters.
+ *
+ * Only adding a string takes a lock. The strings are kept in an array that is only ever replaced by a longer
+ * copy, and a symbol is only handed out after its string is in the array, so lookups in either direction read
+ * without locking.
+ */
+public class SymbolTable {
+
+    private final ConcurrentHashMap<String, Integer> symbols;
+    private volatile String[] strings;
+    private int count;
+
+    /**
+     * Constructor for an empty SymbolTable
+     */
+    public SymbolTable() {
+        this.symbols = new ConcurrentHashMap<>();
+        this.strings = new String[16];
+        this.count = 0;
+    }
+
+    /**
+     * Gets the canonical instance of a string, adding it to the table if it is not already there
+     *
+     * @param value the string to intern
+     * @return the shared instance equal to value, or null if value is null
+     */
+    public String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        return this.stringOf(this.symbolOf(value));
+    }
+
+    /**
+     * Gets the symbol of a string, adding it to the table if it is not already there
+     *
+     * @param value the string to look up
+     * @return the symbol of the string
+     */
+    public int symbolOf(String value) {
+        Integer symbol = this.symbols.get(value);
+        if (symbol != null) {
+            return symbol;
+        }
+        synchronized (this.symbols) {
+            return this.symbols.computeIfAbsent(value, this::add);
+        }
+    }
+
+    /**
+     * Stores a new string and publishes it by writing the array back, before its symbol can be seen. Only called
+     * while holding the lock
+     *
+     * @param value the string to add
+     * @return the symbol of the string
+     */
+    private int add(String value) {
+        String[] grown = this.strings;
+        if (this.count == grown.length) {
+            grown = Arrays.copyOf(grown, grown.length * 2);
+        }
+        grown[this.count] = value;
+        this.strings = grown;
+        return this.count++;
+    }
+
+    /**
+     * Gets the symbol of a string without adding it to the table
+     *
+     * @param value the string to look up
+     * @return the symbol of the string, or -1 if it is not in the table
+     */
+    public int find(String value) {
+        Integer symbol = this.symbols.get(value);
+        return symbol == null ? -1 : symbol;
+    }
+
+    /**
+     * Gets the string of a symbol
+     *
+     * @param symbol the symbol
+     * @return the canonical string for the symbol
+     */
+    public String stringOf(int symbol) {
+        String[] current = this.strings;
+        if (symbol < 0 || symbol >= current.length || current[symbol] == null) {
+            throw new IndexOutOfBoundsException("No string for symbol " + symbol);
+        }
+        return current[symbol];
+    }
+
+    /**
+     * Gets the number of strings in the table
+     *
+     * @return the number of symbols
+     */
+    public int size() {
+        return this.symbols.size();
+    }
+}
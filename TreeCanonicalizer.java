@@ -0,0 +1,101 @@
+package sol;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import src.ITreeNode;
+
+/**
+ * A class that hash-conses the nodes of decision trees, turning them into a DAG in which structurally identical
+ * subtrees are a single shared instance. Leaves are identical when they have the same decision, and attribute
+ * nodes when they split on the same attribute with the same default and policies and have the same edge values
+ * leading to the same (already shared) children. One canonicalizer can be used for many trees, in which case
+ * they share subtrees with each other too.
+ */
+public class TreeCanonicalizer {
+    private final Map<String, DecisionLeaf> leaves;
+    private final Map<List<Object>, AttributeNode> attributeNodes;
+    private final Map<ITreeNode, ITreeNode> canonicalNodes;
+
+    /**
+     * Constructor for an empty TreeCanonicalizer
+     */
+    public TreeCanonicalizer() {
+        this.leaves = new HashMap<>();
+        this.attributeNodes = new HashMap<>();
+        this.canonicalNodes = new IdentityHashMap<>();
+    }
+
+    /**
+     * Finds the shared instance of a subtree, canonicalizing its children first. A node whose children are
+     * already shared and that has no identical twin becomes the shared instance itself, so building a tree
+     * bottom up through this method never copies a node
+     * @param node the root of the subtree
+     * @return the shared instance of the subtree
+     */
+    public ITreeNode canonicalize(ITreeNode node) {
+        ITreeNode known = this.canonicalNodes.get(node);
+        if (known != null) {
+            return known;
+        }
+        ITreeNode canonical = node;
+        if (node instanceof DecisionLeaf leaf) {
+            canonical = this.leaves.computeIfAbsent(leaf.getValue(), value -> leaf);
+        } else if (node instanceof AttributeNode attributeNode) {
+            canonical = this.canonicalizeAttributeNode(attributeNode);
+        }
+        // only the shared instance is remembered, so duplicates that were replaced can be collected
+        this.canonicalNodes.put(canonical, canonical);
+        return canonical;
+    }
+
+    /**
+     * Gets the number of distinct nodes shared so far
+     * @return the number of canonical leaves and attribute nodes
+     */
+    public int getDistinctNodeCount() {
+        return this.leaves.size() + this.attributeNodes.size();
+    }
+
+    /**
+     * Finds the shared instance of an attribute node, rebuilding it over shared children if any of its
+     * children were replaced
+     * @param node the attribute node
+     * @return the shared instance of the node
+     */
+    private AttributeNode canonicalizeAttributeNode(AttributeNode node) {
+        List<ValueEdge> edges = new ArrayList<>();
+        boolean changed = false;
+        List<Object> key = new ArrayList<>();
+        key.add(node.getAttribute());
+        key.add(node.getDefault());
+        key.add(node.getMissingPolicy());
+        key.add(node.getUnseenPolicy());
+        ITreeNode majorityChild = node.getMajorityChild();
+        if (majorityChild != null) {
+            majorityChild = this.canonicalize(majorityChild);
+        }
+        key.add(majorityChild);
+        for (ValueEdge edge : node.getOutgoingEdges()) {
+            ITreeNode child = this.canonicalize(edge.getChild());
+            changed |= child != edge.getChild();
+            edges.add(new ValueEdge(edge.getValue(), child));
+            key.add(edge.getValue());
+            key.add(child);
+        }
+        AttributeNode existing = this.attributeNodes.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        AttributeNode canonical = node;
+        if (changed) {
+            canonical = new AttributeNode(node.getAttribute(), node.getDefault(), edges, majorityChild,
+                    node.getMissingPolicy(), node.getUnseenPolicy());
+        }
+        this.attributeNodes.put(key, canonical);
+        return canonical;
+    }
+}
@@ -1,16 +1,31 @@
 package sol;
 
+import src.AttributeSelection;
 import src.ITreeGenerator;
 import src.ITreeNode;
 import src.Row;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
 
 /**
  * A class that implements the ITreeGenerator interface used to generate a decision tree
  */
-public class TreeGenerator implements ITreeGenerator<Dataset> {
+public class TreeGenerator implements ITreeGenerator<AbstractDataset> {
     private ITreeNode root;
+    private volatile TreeStatistics statistics;
+    private volatile PredictionCache predictionCache;
+    private MissingValuePolicy missingValuePolicy = MissingValuePolicy.FAIL;
+    private MissingValuePolicy unseenValuePolicy = MissingValuePolicy.DEFAULT;
+    private boolean shareSubtrees = false;
+    private TreeCanonicalizer canonicalizer;
+    private int samplingThreshold = 0;
+    private int sampleSize = 0;
+    private Random sampleRandom;
+    private volatile boolean lazy = false;
+    private boolean buildingLazily = false;
+    private boolean builtLazily = false;
 
     /**
      * This is the generateTree method from the ITreeGenerator interface. This method creates a copy of the
@@ -19,10 +34,62 @@ public class TreeGenerator implements ITreeGenerator<Dataset> {
      * @param targetAttribute the attribute to predict
      */
     @Override
-    public void generateTree(Dataset trainingData, String targetAttribute) {
-        Dataset copyData = trainingData.cloneWithRemoveFromAttribute(targetAttribute);
+    public void generateTree(AbstractDataset trainingData, String targetAttribute) {
+        AbstractDataset copyData = trainingData.cloneWithRemoveFromAttribute(targetAttribute);
         //remove the target from the attribute list
-        this.root = this.generateTreeHelper(copyData, targetAttribute);
+        this.startBuild();
+        ITreeNode newRoot;
+        try {
+            newRoot = this.generateTreeHelper(copyData, targetAttribute);
+        } catch (RuntimeException e) {
+            this.abortBuild();
+            throw e;
+        }
+        this.finishBuild(newRoot);
+    }
+
+    /**
+     * Prepares for building a new tree. Builders other than generateTreeHelper call this before making any
+     * nodes with makeLeaf and makeNode, and finishBuild once they have the root, or abortBuild if they fail
+     */
+    void startBuild() {
+        this.canonicalizer = this.shareSubtrees ? new TreeCanonicalizer() : null;
+        this.buildingLazily = false;
+    }
+
+    /**
+     * Installs a newly built tree as this generator's tree, refreshing the statistics and the prediction cache if
+     * they are on
+     * @param newRoot the root of the new tree
+     */
+    void finishBuild(ITreeNode newRoot) {
+        this.canonicalizer = null;
+        this.root = newRoot;
+        this.builtLazily = this.buildingLazily;
+        if (this.statistics != null) {
+            this.statistics = new TreeStatistics(this.root);
+        }
+        PredictionCache cache = this.predictionCache;
+        if (cache != null) {
+            // the old tree's decisions must not be served for the new one
+            this.predictionCache = new PredictionCache(this.root, cache.getMaxEntries());
+        }
+    }
+
+    /**
+     * Ends a build that failed before it had a root, leaving the current tree, its statistics and its prediction
+     * cache as they were
+     */
+    void abortBuild() {
+        this.canonicalizer = null;
+    }
+
+    /**
+     * Gets the root of the current tree
+     * @return the root, or null if no tree has been generated
+     */
+    ITreeNode getRoot() {
+        return this.root;
     }
 
     /**
@@ -36,20 +103,209 @@ public class TreeGenerator implements ITreeGenerator<Dataset> {
      * @param targetAttribute the attribute we are looking to determine on
      * @return either the new leaf or attribute node
      */
-    public ITreeNode generateTreeHelper(Dataset subset, String targetAttribute) {
+    public ITreeNode generateTreeHelper(AbstractDataset subset, String targetAttribute) {
+        if (this.lazy) {
+            TreeGenerator settings = this.snapshot();
+            this.buildingLazily = true;
+            return this.buildLevel(subset, targetAttribute, p -> new LazyNode(settings, p, targetAttribute), true);
+        }
+        return this.buildLevel(subset, targetAttribute, p -> this.generateTreeHelper(p, targetAttribute), true);
+    }
+
+    /**
+     * Copies the settings that shape new nodes into a generator of their own for the lazy nodes of a tree, so that
+     * their subtrees are built the way the tree was generated however this generator is set up later. The copy
+     * draws its samples from a Random seeded by this generator's, so later trees do not share a sequence with it
+     * @return a generator with this generator's policies and sampling settings
+     */
+    private TreeGenerator snapshot() {
+        TreeGenerator settings = new TreeGenerator();
+        settings.missingValuePolicy = this.missingValuePolicy;
+        settings.unseenValuePolicy = this.unseenValuePolicy;
+        settings.samplingThreshold = this.samplingThreshold;
+        settings.sampleSize = this.sampleSize;
+        settings.sampleRandom = this.sampleRandom == null ? null : new Random(this.sampleRandom.nextLong());
+        settings.lazy = true;
+        return settings;
+    }
+
+    /**
+     * Builds the top level of a lazy subtree when a decision first reaches it. This is called on the snapshot the
+     * lazy nodes hold rather than on the generator that made the tree. Its children are lazy again, and it is
+     * never shared, since subtrees are built one at a time long after the tree itself was installed
+     * @param subset the rows that reached the subtree
+     * @param targetAttribute the attribute we are looking to determine on
+     * @return either the new leaf or attribute node
+     */
+    ITreeNode expand(AbstractDataset subset, String targetAttribute) {
+        return this.buildLevel(subset, targetAttribute, p -> new LazyNode(this, p, targetAttribute), false);
+    }
+
+    /**
+     * Builds one node the way generateTreeHelper describes, getting each child from a function
+     * @param subset the dataset to build off of
+     * @param targetAttribute the attribute we are looking to determine on
+     * @param buildChild makes the child for each partition
+     * @param share whether to replace the node with its shared instance when subtree sharing is on
+     * @return either the new leaf or attribute node
+     */
+    ITreeNode buildLevel(AbstractDataset subset, String targetAttribute,
+                         Function<AbstractDataset, ITreeNode> buildChild, boolean share) {
         String defaultValue = subset.getDefault(targetAttribute);
         if (subset.sameOutcome(targetAttribute) || subset.attributeListEmpty()) {
-            return new DecisionLeaf(defaultValue);
+            ITreeNode leaf = new DecisionLeaf(defaultValue);
+            return share ? this.share(leaf) : leaf;
         } else {
-            String attribute = subset.getAttributeToSplitOn();
-            List<Dataset> newData = subset.partition(attribute);
+            AbstractDataset selectFrom = subset;
+            if (this.samplingThreshold > 0 && subset.size() > this.samplingThreshold
+                    && subset.getSelectionType() == AttributeSelection.INFORMATION_GAIN) {
+                selectFrom = subset.sample(this.sampleSize, this.sampleRandom);
+            }
+            String attribute = selectFrom.getAttributeToSplitOn(targetAttribute);
+            List<? extends AbstractDataset> newData = subset.partition(attribute);
             ArrayList<ValueEdge> edgeList = new ArrayList<>();
-            for (Dataset p: newData) {
-                edgeList.add(new ValueEdge(p.getDataObjects().get(0).getAttributeValue(attribute),
-                        this.generateTreeHelper(p, targetAttribute)));
+            ITreeNode majorityChild = null;
+            int majoritySize = 0;
+            for (AbstractDataset p: newData) {
+                ITreeNode child = buildChild.apply(p);
+                edgeList.add(new ValueEdge(p.getDataObjects().get(0).getAttributeValue(attribute), child));
+                if (p.size() > majoritySize) {
+                    majorityChild = child;
+                    majoritySize = p.size();
+                }
             }
-            return new AttributeNode(attribute, defaultValue, edgeList);
+            ITreeNode node = new AttributeNode(attribute, defaultValue, edgeList, majorityChild,
+                    this.missingValuePolicy, this.unseenValuePolicy);
+            return share ? this.share(node) : node;
+        }
+    }
+
+    /**
+     * Makes a leaf for the tree being built
+     * @param decision the decision of the leaf
+     * @return the leaf, or its shared instance if subtree sharing is on
+     */
+    ITreeNode makeLeaf(String decision) {
+        return this.share(new DecisionLeaf(decision));
+    }
+
+    /**
+     * Makes an attribute node for the tree being built, with this generator's missing and unseen value
+     * policies
+     * @param attribute the attribute to split on
+     * @param defaultValue the most common outcome of the node's rows
+     * @param edgeList the edges to the node's children
+     * @param majorityChild the child that the most rows went to
+     * @return the node, or its shared instance if subtree sharing is on
+     */
+    ITreeNode makeNode(String attribute, String defaultValue, List<ValueEdge> edgeList, ITreeNode majorityChild) {
+        return this.share(new AttributeNode(attribute, defaultValue, edgeList, majorityChild,
+                this.missingValuePolicy, this.unseenValuePolicy));
+    }
+
+    /**
+     * Replaces a freshly built node with its shared instance when subtree sharing is on. Since children are
+     * built first, every node's children are already shared when it gets here
+     * @param node the node that was just built
+     * @return the shared instance of the node, or the node itself if sharing is off
+     */
+    private ITreeNode share(ITreeNode node) {
+        if (this.canonicalizer == null) {
+            return node;
+        }
+        return this.canonicalizer.canonicalize(node);
+    }
+
+    /**
+     * Turns lazy building on or off. A lazy tree only builds its root when it is generated, and every other
+     * subtree is built the first time a decision reaches it, with the policies and sampling settings the generator
+     * had when the tree was generated. Subtree sharing only applies to the root of a lazy tree. Lazy trees cannot
+     * have statistics, since the statistics number the nodes of a tree once and a lazy tree keeps growing
+     * @param lazy whether to build subtrees on demand
+     */
+    public void setLazy(boolean lazy) {
+        if (lazy && this.statistics != null) {
+            throw new IllegalStateException("Lazy building cannot be turned on while statistics are on");
         }
+        this.lazy = lazy;
+    }
+
+    /**
+     * Turns on approximate split selection. Nodes with more rows than the threshold choose their split
+     * attribute from a reservoir sample of their rows instead of all of them, and are then partitioned in full
+     * on that attribute. This only changes anything for INFORMATION_GAIN, since the other selection types do
+     * not look at the rows
+     * @param threshold the number of rows above which nodes sample, or 0 to turn sampling off
+     * @param sampleSize the number of rows in each sample
+     * @param seed the seed for drawing the samples
+     */
+    public void setSplitSampling(int threshold, int sampleSize, long seed) {
+        if (threshold > 0 && sampleSize <= 0) {
+            throw new IllegalArgumentException("Sample size must be positive: " + sampleSize);
+        }
+        this.samplingThreshold = threshold;
+        this.sampleSize = sampleSize;
+        this.sampleRandom = new Random(seed);
+    }
+
+    /**
+     * Gets the number of rows above which nodes sample
+     * @return the threshold, or 0 if sampling is off
+     */
+    int getSamplingThreshold() {
+        return this.samplingThreshold;
+    }
+
+    /**
+     * Gets the number of rows in each sample
+     * @return the sample size
+     */
+    int getSampleSize() {
+        return this.sampleSize;
+    }
+
+    /**
+     * Gets the Random that samples are drawn from, whose state is where the next sample will come from
+     * @return the Random, or null if sampling has never been turned on
+     */
+    Random getSampleRandom() {
+        return this.sampleRandom;
+    }
+
+    /**
+     * Replaces the Random that samples are drawn from, so a resumed build draws the samples it would have drawn
+     * had it not stopped
+     * @param sampleRandom the Random to draw from
+     */
+    void restoreSampleRandom(Random sampleRandom) {
+        this.sampleRandom = sampleRandom;
+    }
+
+    /**
+     * Sets whether trees generated from now on share identical subtrees. When on, identical leaves and
+     * identical subtrees are built as one instance, so the tree becomes a DAG with far fewer nodes
+     * @param shareSubtrees whether to share identical subtrees
+     */
+    public void setShareSubtrees(boolean shareSubtrees) {
+        this.shareSubtrees = shareSubtrees;
+    }
+
+    /**
+     * Sets what the nodes of trees generated from now on do with rows that are missing the node's attribute.
+     * By default they throw, the same as Row.getAttributeValue
+     * @param missingValuePolicy the policy for missing attributes
+     */
+    public void setMissingValuePolicy(MissingValuePolicy missingValuePolicy) {
+        this.missingValuePolicy = missingValuePolicy;
+    }
+
+    /**
+     * Sets what the nodes of trees generated from now on do with values that were not in their training data.
+     * By default they return the node's default value
+     * @param unseenValuePolicy the policy for unseen values
+     */
+    public void setUnseenValuePolicy(MissingValuePolicy unseenValuePolicy) {
+        this.unseenValuePolicy = unseenValuePolicy;
     }
 
     /**
@@ -60,8 +316,94 @@ public class TreeGenerator implements ITreeGenerator<Dataset> {
      */
     @Override
     public String getDecision(Row datum) {
+        PredictionCache cache = this.predictionCache;
+        if (cache != null) {
+            return cache.getDecision(datum, this::decide);
+        }
+        return this.decide(datum);
+    }
+
+    /**
+     * Makes a decision without the prediction cache, through the statistics or the tree
+     * @param datum the datum to lookup a decision for
+     * @return the decision of the tree
+     */
+    private String decide(Row datum) {
+        TreeStatistics stats = this.statistics;
+        if (stats != null) {
+            return stats.getDecision(this.root, datum);
+        }
         return this.root.getDecision(datum);
     }
 
+    /**
+     * Compiles the current tree for deciding the rows of a store by their index, which switches on the codes of the
+     * rows' values instead of reading strings. Regenerating the tree does not change a tree compiled earlier
+     * @param store the store whose rows are decided
+     * @return the compiled tree, which is still interpreted if the tree was too large to compile
+     */
+    public CompiledTree compile(ColumnStore store) {
+        if (this.root == null) {
+            throw new IllegalStateException("Tree has not been generated");
+        }
+        return CompiledTree.compile(this.root, store);
+    }
+
+    /**
+     * Turns on path statistics for the current tree. While statistics are on, every decision records the nodes
+     * it passes through, its depth and its latency. Regenerating the tree starts a fresh set of statistics. Trees
+     * built lazily are not supported, and neither is turning lazy building on while statistics are on
+     */
+    public void enableStatistics() {
+        if (this.root == null) {
+            throw new IllegalStateException("Tree has not been generated");
+        }
+        if (this.lazy || this.builtLazily) {
+            throw new IllegalStateException("Statistics are not supported for lazy trees");
+        }
+        this.statistics = new TreeStatistics(this.root);
+    }
+
+    /**
+     * Turns off path statistics so that decisions go straight to the tree again
+     */
+    public void disableStatistics() {
+        this.statistics = null;
+    }
+
+    /**
+     * Gets the statistics collected since they were enabled
+     * @return the statistics, or null if statistics are off
+     */
+    public TreeStatistics getStatistics() {
+        return this.statistics;
+    }
+
+    /**
+     * Turns on a cache of decisions keyed on the values of the attributes the tree splits on. Regenerating the
+     * tree starts a fresh, empty cache. Decisions answered from the cache are not recorded in the statistics
+     * @param maxEntries the most decisions to keep
+     */
+    public void enableCaching(int maxEntries) {
+        if (this.root == null) {
+            throw new IllegalStateException("Tree has not been generated");
+        }
+        this.predictionCache = new PredictionCache(this.root, maxEntries);
+    }
+
+    /**
+     * Drops the prediction cache so that every decision walks the tree again
+     */
+    public void disableCaching() {
+        this.predictionCache = null;
+    }
+
+    /**
+     * Gets the prediction cache of the current tree, which holds its hit and miss counts
+     * @return the cache, or null if caching is off
+     */
+    public PredictionCache getPredictionCache() {
+        return this.predictionCache;
+    }
 
 }
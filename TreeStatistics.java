@@ -0,0 +1,176 @@
+package sol;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import src.ITreeNode;
+import src.Row;
+
+/**
+ * A class that collects path statistics for a trained decision tree: how often each node is reached, how deep
+ * the decision paths are, and how long each decision takes. The counters are LongAdders so that many threads can
+ * record decisions at once without contending on a single value.
+ */
+public class TreeStatistics {
+    private final Map<ITreeNode, Integer> nodeIndex;
+    private final ITreeNode[] nodes;
+    private final int[][] childIndices;
+    private final LongAdder[] nodeHits;
+    private final LongAdder[] depthCounts;
+    private final LatencyHistogram latency;
+
+    /**
+     * Constructor for TreeStatistics which numbers every node reachable from the root so that hits can be
+     * counted per node. Nodes shared between several parents are only counted once. The number of each node's
+     * children is worked out here too, so a decision follows numbers instead of looking nodes up
+     * @param root the root of the tree to collect statistics for
+     */
+    public TreeStatistics(ITreeNode root) {
+        this.nodeIndex = new IdentityHashMap<>();
+        int maxDepth = this.indexNodes(root, new IdentityHashMap<>());
+        this.nodes = new ITreeNode[this.nodeIndex.size()];
+        this.childIndices = new int[this.nodeIndex.size()][];
+        for (Map.Entry<ITreeNode, Integer> entry : this.nodeIndex.entrySet()) {
+            this.nodes[entry.getValue()] = entry.getKey();
+            if (entry.getKey() instanceof AttributeNode attributeNode) {
+                List<ValueEdge> edges = attributeNode.getOutgoingEdges();
+                int[] children = new int[edges.size()];
+                for (int edge = 0; edge < children.length; edge++) {
+                    children[edge] = this.nodeIndex.get(edges.get(edge).getChild());
+                }
+                this.childIndices[entry.getValue()] = children;
+            }
+        }
+        this.nodeHits = newCounters(this.nodeIndex.size());
+        this.depthCounts = newCounters(maxDepth + 1);
+        this.latency = new LatencyHistogram();
+    }
+
+    /**
+     * Walks the tree to make a decision for a row, recording the hit of every node on the path, the depth of
+     * the path, and the time taken
+     * @param root the root of the tree, which must be the root these statistics were built for
+     * @param datum the datum to lookup a decision for
+     * @return the decision of the tree
+     */
+    public String getDecision(ITreeNode root, Row datum) {
+        if (root != this.nodes[0]) {
+            throw new IllegalArgumentException("Statistics were built for a different tree");
+        }
+        long start = System.nanoTime();
+        int index = 0;
+        int depth = 0;
+        String decision;
+        while (true) {
+            this.nodeHits[index].increment();
+            ITreeNode node = this.nodes[index];
+            if (!(node instanceof AttributeNode attributeNode)) {
+                decision = node.getDecision(datum);
+                break;
+            }
+            int edge = attributeNode.routeIndex(datum);
+            if (edge < 0) {
+                decision = attributeNode.getDefault();
+                break;
+            }
+            index = this.childIndices[index][edge];
+            depth++;
+        }
+        this.depthCounts[Math.min(depth, this.depthCounts.length - 1)].increment();
+        this.latency.record(System.nanoTime() - start);
+        return decision;
+    }
+
+    /**
+     * Gets the number of decisions that passed through a node
+     * @param node a node of the tree
+     * @return the number of hits, or zero if the node is not part of the tree
+     */
+    public long getHits(ITreeNode node) {
+        Integer index = this.nodeIndex.get(node);
+        if (index == null) {
+            return 0;
+        }
+        return this.nodeHits[index].sum();
+    }
+
+    /**
+     * Gets the number of decisions for every path depth, where the depth is the number of edges followed
+     * @return an array where index i is the number of decisions that followed i edges
+     */
+    public long[] getDepthHistogram() {
+        long[] histogram = new long[this.depthCounts.length];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = this.depthCounts[i].sum();
+        }
+        return histogram;
+    }
+
+    /**
+     * Gets the latency of a decision at a percentile
+     * @param percentile a percentile between 0 and 100
+     * @return the latency in nanoseconds
+     */
+    public long getLatencyPercentile(double percentile) {
+        return this.latency.getValueAtPercentile(percentile);
+    }
+
+    /**
+     * Gets the number of decisions recorded
+     * @return the number of decisions
+     */
+    public long getDecisionCount() {
+        return this.latency.getCount();
+    }
+
+    /**
+     * Clears all of the counters
+     */
+    public void reset() {
+        for (LongAdder counter : this.nodeHits) {
+            counter.reset();
+        }
+        for (LongAdder counter : this.depthCounts) {
+            counter.reset();
+        }
+        this.latency.reset();
+    }
+
+    /**
+     * Numbers the nodes of the tree in pre-order and finds the height of each one. Heights are remembered so a
+     * node reached through several parents is only walked once
+     * @param node the current node
+     * @param heights the heights of the nodes numbered so far
+     * @return the number of edges on the longest path below this node
+     */
+    private int indexNodes(ITreeNode node, Map<ITreeNode, Integer> heights) {
+        Integer known = heights.get(node);
+        if (known != null) {
+            return known;
+        }
+        this.nodeIndex.put(node, this.nodeIndex.size());
+        int height = 0;
+        if (node instanceof AttributeNode attributeNode) {
+            for (ValueEdge edge : attributeNode.getOutgoingEdges()) {
+                height = Math.max(height, this.indexNodes(edge.getChild(), heights) + 1);
+            }
+        }
+        heights.put(node, height);
+        return height;
+    }
+
+    /**
+     * Makes an array of fresh counters
+     * @param size the number of counters
+     * @return the array of counters
+     */
+    private static LongAdder[] newCounters(int size) {
+        LongAdder[] counters = new LongAdder[size];
+        for (int i = 0; i < size; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+}
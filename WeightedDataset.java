@@ -0,0 +1,328 @@
+package sol;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import src.AttributeSelection;
+import src.Row;
+
+/**
+ * A Dataset in which rows with the same values for every attribute in the attribute list are collapsed into one
+ * weighted entry. Each entry keeps one of its rows to stand for the group and the counts of the target values
+ * over all of them, so partitioning, counting, getDefault and sameOutcome cost the number of distinct rows
+ * instead of the number of rows. The dataset is built for one target attribute, and size still counts every
+ * original row so that tree growth sees the same weights as it would without collapsing.
+ */
+public class WeightedDataset extends Dataset {
+    private final String targetAttribute;
+    private final List<Map<String, Integer>> classCounts;
+    private final int totalWeight;
+
+    /**
+     * Constructor for a WeightedDataset from entries that are already collapsed
+     * @param attributeList - a list of attributes
+     * @param representatives one row for each entry
+     * @param classCounts the counts of the target values of each entry, in the same order
+     * @param targetAttribute the attribute whose values are counted
+     * @param attributeSelection - an enum for which way to select attributes
+     */
+    WeightedDataset(List<String> attributeList, List<Row> representatives, List<Map<String, Integer>> classCounts,
+                    String targetAttribute, AttributeSelection attributeSelection) {
+        super(attributeList, representatives, attributeSelection);
+        this.targetAttribute = targetAttribute;
+        this.classCounts = classCounts;
+        int total = 0;
+        for (Map<String, Integer> counts : classCounts) {
+            total += weightOf(counts);
+        }
+        this.totalWeight = total;
+    }
+
+    /**
+     * Collapses the rows of a dataset that have the same values for every attribute in its attribute list other
+     * than the target, counting the target values of each group
+     * @param data the dataset to collapse
+     * @param targetAttribute the attribute the tree will predict
+     * @return the collapsed dataset, with the same attribute list and selection type
+     */
+    public static WeightedDataset collapse(Dataset data, String targetAttribute) {
+        Map<List<String>, Integer> entryOf = new LinkedHashMap<>();
+        List<Row> representatives = new ArrayList<>();
+        List<Map<String, Integer>> classCounts = new ArrayList<>();
+        List<String> keyAttributes = new ArrayList<>(data.getAttributeList());
+        keyAttributes.remove(targetAttribute);
+        for (Row row : data.getDataObjects()) {
+            List<String> key = new ArrayList<>(keyAttributes.size());
+            for (String attribute : keyAttributes) {
+                key.add(row.getAttributeValue(attribute));
+            }
+            Integer entry = entryOf.get(key);
+            if (entry == null) {
+                entry = representatives.size();
+                entryOf.put(key, entry);
+                representatives.add(row);
+                classCounts.add(new LinkedHashMap<>());
+            }
+            classCounts.get(entry).merge(row.getAttributeValue(targetAttribute), 1, Integer::sum);
+        }
+        return new WeightedDataset(data.getAttributeList(), representatives, classCounts, targetAttribute,
+                data.getSelectionType());
+    }
+
+    /**
+     * Gets the number of distinct entries the rows were collapsed into
+     * @return the number of entries
+     */
+    public int distinctSize() {
+        return this.classCounts.size();
+    }
+
+    /**
+     * Gets the counts of the target values of an entry
+     * @param index the index of the entry, the same as its row in getDataObjects
+     * @return the counts, which must not be modified
+     */
+    public Map<String, Integer> getClassCounts(int index) {
+        return this.classCounts.get(index);
+    }
+
+    /**
+     * Returns the number of original rows, counting every entry by its weight. This is what tree growth and
+     * sampling measure a dataset by, so that they behave the same as on the rows before they were collapsed.
+     * getDataObjects holds one row per entry, so its size is distinctSize, not this
+     * @return the size of the data set
+     */
+    @Override
+    public int size() {
+        return this.totalWeight;
+    }
+
+    /**
+     * Gets the values of an attribute as if the rows had not been collapsed. Values of the target come from the
+     * counts of each entry, and values of other attributes are repeated by the weight of their entry
+     * @param targetAttribute attribute which you want the values of
+     * @param distinct whether you want to list to have repeat values
+     * @return the list of values of the attribute (distinct or not)
+     */
+    @Override
+    public ArrayList<String> getTargetValues(String targetAttribute, Boolean distinct) {
+        ArrayList<String> values = new ArrayList<>();
+        for (int i = 0; i < this.classCounts.size(); i++) {
+            if (targetAttribute.equals(this.targetAttribute)) {
+                for (Map.Entry<String, Integer> count : this.classCounts.get(i).entrySet()) {
+                    values.addAll(Collections.nCopies(distinct ? 1 : count.getValue(), count.getKey()));
+                }
+            } else {
+                String value = this.getDataObjects().get(i).getAttributeValue(targetAttribute);
+                values.addAll(Collections.nCopies(distinct ? 1 : weightOf(this.classCounts.get(i)),
+                        value));
+            }
+        }
+        if (distinct) {
+            return new ArrayList<>(new LinkedHashSet<>(values));
+        }
+        return values;
+    }
+
+    /**
+     * Clones the dataset with an attribute removed from the attribute list. Entries that become identical once
+     * the attribute is gone are merged
+     * @param attributeToRemove the attribute to remove from the attribute list
+     * @return the new dataset with the target attribute removed
+     */
+    @Override
+    public WeightedDataset cloneWithRemoveFromAttribute(String attributeToRemove) {
+        ArrayList<String> newAttributeList = new ArrayList<>(this.getAttributeList());
+        newAttributeList.remove(attributeToRemove);
+        if (attributeToRemove.equals(this.targetAttribute) || !this.getAttributeList().contains(attributeToRemove)) {
+            // the key is unchanged, so the entries stay distinct
+            return new WeightedDataset(newAttributeList, this.getDataObjects(), this.classCounts,
+                    this.targetAttribute, this.getSelectionType());
+        }
+        Map<List<String>, Integer> entryOf = new LinkedHashMap<>();
+        List<Row> representatives = new ArrayList<>();
+        List<Map<String, Integer>> classCounts = new ArrayList<>();
+        for (int i = 0; i < this.classCounts.size(); i++) {
+            Row row = this.getDataObjects().get(i);
+            List<String> key = new ArrayList<>();
+            for (String attribute : newAttributeList) {
+                if (!attribute.equals(this.targetAttribute)) {
+                    key.add(row.getAttributeValue(attribute));
+                }
+            }
+            Integer entry = entryOf.get(key);
+            if (entry == null) {
+                entryOf.put(key, representatives.size());
+                representatives.add(row);
+                classCounts.add(new LinkedHashMap<>(this.classCounts.get(i)));
+            } else {
+                Map<String, Integer> merged = classCounts.get(entry);
+                this.classCounts.get(i).forEach((value, count) -> merged.merge(value, count, Integer::sum));
+            }
+        }
+        return new WeightedDataset(newAttributeList, representatives, classCounts, this.targetAttribute,
+                this.getSelectionType());
+    }
+
+    /**
+     * Splits the entries by their value of an attribute in a single pass. Entries keep their counts, since
+     * entries that differ are still different within each part
+     * @param attributeToSplitOn the attribute by which we want to split the datasets on
+     * @return a list of datasets, one for each distinct value of the attribute
+     */
+    @Override
+    public List<Dataset> partition(String attributeToSplitOn) {
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < this.classCounts.size(); i++) {
+            groups.computeIfAbsent(this.getDataObjects().get(i).getAttributeValue(attributeToSplitOn),
+                    v -> new ArrayList<>()).add(i);
+        }
+        ArrayList<String> newAttributeList = new ArrayList<>(this.getAttributeList());
+        newAttributeList.remove(attributeToSplitOn);
+        List<Dataset> partitions = new ArrayList<>();
+        for (List<Integer> group : groups.values()) {
+            List<Row> representatives = new ArrayList<>(group.size());
+            List<Map<String, Integer>> classCounts = new ArrayList<>(group.size());
+            for (int i : group) {
+                representatives.add(this.getDataObjects().get(i));
+                classCounts.add(this.classCounts.get(i));
+            }
+            partitions.add(new WeightedDataset(newAttributeList, representatives, classCounts, this.targetAttribute,
+                    this.getSelectionType()));
+        }
+        return partitions;
+    }
+
+    /**
+     * Counts (value, target value) pairs by adding up the counts of each entry
+     * @param attribute the attribute to group the rows by
+     * @param targetAttribute the attribute to count the values of within each group
+     * @return a map from each value of the attribute to the counts of the target values in its rows
+     */
+    @Override
+    protected Map<String, Map<String, Integer>> countByValue(String attribute, String targetAttribute) {
+        this.checkTarget(targetAttribute);
+        Map<String, Map<String, Integer>> counts = new LinkedHashMap<>();
+        for (int i = 0; i < this.classCounts.size(); i++) {
+            Map<String, Integer> group = counts.computeIfAbsent(
+                    this.getDataObjects().get(i).getAttributeValue(attribute), v -> new LinkedHashMap<>());
+            this.classCounts.get(i).forEach((value, count) -> group.merge(value, count, Integer::sum));
+        }
+        return counts;
+    }
+
+    /**
+     * Draws a uniform random sample of the original rows, without replacement. Each drawn row counts once, so an
+     * entry in the sample holds only the target values of its rows that were drawn, and the sample's size is the
+     * sample size. Every row is equally likely to be drawn, the same as Dataset.sample on the rows before they
+     * were collapsed
+     * @param sampleSize the number of rows to draw
+     * @param random the source of randomness
+     * @return a dataset over the entries of the drawn rows, or this dataset if it has no more rows than the sample
+     * size
+     */
+    @Override
+    public WeightedDataset sample(int sampleSize, Random random) {
+        if (this.size() <= sampleSize) {
+            return this;
+        }
+        // Floyd's algorithm picks sampleSize distinct positions among the rows without visiting every row
+        Set<Integer> drawn = new HashSet<>();
+        for (int j = this.totalWeight - sampleSize; j < this.totalWeight; j++) {
+            int position = random.nextInt(j + 1);
+            drawn.add(drawn.contains(position) ? j : position);
+        }
+        int[] positions = drawn.stream().mapToInt(Integer::intValue).sorted().toArray();
+        List<Row> representatives = new ArrayList<>();
+        List<Map<String, Integer>> classCounts = new ArrayList<>();
+        int next = 0;
+        int start = 0;
+        for (int i = 0; i < this.classCounts.size() && next < positions.length; i++) {
+            Map<String, Integer> sampled = new LinkedHashMap<>();
+            for (Map.Entry<String, Integer> count : this.classCounts.get(i).entrySet()) {
+                // the rows of each entry and target value are numbered one after the other
+                int end = start + count.getValue();
+                while (next < positions.length && positions[next] < end) {
+                    sampled.merge(count.getKey(), 1, Integer::sum);
+                    next++;
+                }
+                start = end;
+            }
+            if (!sampled.isEmpty()) {
+                representatives.add(this.getDataObjects().get(i));
+                classCounts.add(sampled);
+            }
+        }
+        return new WeightedDataset(this.getAttributeList(), representatives, classCounts, this.targetAttribute,
+                this.getSelectionType());
+    }
+
+    /**
+     * Finds the most common value of the target attribute from the summed counts. Ties go to the value that comes
+     * first alphabetically, the same as mostFrequent
+     * @param targetAttribute the attribute which we are trying to find the most common of
+     * @return attribute which is the most common
+     */
+    @Override
+    public String getDefault(String targetAttribute) {
+        this.checkTarget(targetAttribute);
+        if (this.size() == 0) {
+            throw new IndexOutOfBoundsException("Dataset is Empty");
+        }
+        return majority(this.totalClassCounts());
+    }
+
+    /**
+     * Checks whether every row has the same target value from the summed counts
+     * @param targetAttribute the attribute for which to check if all are the same
+     * @return true if the dataset has exactly one value for the attribute
+     */
+    @Override
+    public boolean sameOutcome(String targetAttribute) {
+        this.checkTarget(targetAttribute);
+        return this.totalClassCounts().size() == 1;
+    }
+
+    /**
+     * Adds up the counts of every entry
+     * @return the number of rows for each target value
+     */
+    private Map<String, Integer> totalClassCounts() {
+        Map<String, Integer> total = new LinkedHashMap<>();
+        for (Map<String, Integer> counts : this.classCounts) {
+            counts.forEach((value, count) -> total.merge(value, count, Integer::sum));
+        }
+        return total;
+    }
+
+    /**
+     * Checks that an attribute is the one the counts were made for
+     * @param targetAttribute the attribute being predicted
+     */
+    private void checkTarget(String targetAttribute) {
+        if (!targetAttribute.equals(this.targetAttribute)) {
+            throw new IllegalArgumentException("Dataset was collapsed for target '" + this.targetAttribute
+                    + "', not '" + targetAttribute + "'");
+        }
+    }
+
+    /**
+     * Adds up the counts of an entry
+     * @param counts the counts of the target values of the entry
+     * @return the number of rows in the entry
+     */
+    private static int weightOf(Map<String, Integer> counts) {
+        int weight = 0;
+        for (int count : counts.values()) {
+            weight += count;
+        }
+        return weight;
+    }
+}